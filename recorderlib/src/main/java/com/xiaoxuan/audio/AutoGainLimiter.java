@@ -0,0 +1,275 @@
+package com.xiaoxuan.audio;
+
+import java.util.Arrays;
+
+/**
+ * 实时自动增益 + 前视峰值限幅，在采集线程中就地处理 16bit PCM，录音结束无需再处理
+ * <p>
+ * 自动增益按约 300ms 的 RMS 将电平拉向目标值，低于门限的静音段保持当前增益不再放大底噪；
+ * 限幅器延迟 lookAhead 输出：先求前视窗口内所需增益的最小值，再对最近 lookAhead 帧的最小值取平均，
+ * 增益在峰值到达前的 lookAhead 内线性降到所需值，既不跳变也保证输出不超过 ceiling。
+ * 因此输出整体延后 lookAhead，开头为同等长度的静音。
+ * <p>
+ * 非线程安全，应只在采集线程中使用；不分配内存。
+ */
+public class AutoGainLimiter {
+
+    public static final int DEFAULT_LOOK_AHEAD_MS = 5;
+
+    private static final float FULL_SCALE = 32768f;
+
+    private static final float RMS_WINDOW_MS = 300;
+
+    /**
+     * 自动增益下降（电平变大）与上升（电平变小）的时间常数
+     */
+    private static final float AGC_ATTACK_MS = 50;
+
+    private static final float AGC_RELEASE_MS = 2000;
+
+    private static final float LIMITER_RELEASE_MS = 80;
+
+    /**
+     * 低于该 RMS 电平时不调整增益
+     */
+    private static final float GATE_DB = -50;
+
+    private final int mChannels;
+
+    private final float mTarget;
+
+    private final float mMaxGain;
+
+    private final float mCeiling;
+
+    private final float mGate;
+
+    private final float mRmsCoeff;
+
+    private final float mAttackCoeff;
+
+    private final float mReleaseCoeff;
+
+    private final float mLimiterReleaseCoeff;
+
+    private final int mLookAhead;
+
+    /**
+     * 延迟线，已乘以自动增益的采样 [frame * channels + c]
+     */
+    private final float[] mDelay;
+
+    private int mDelayPos;
+
+    /**
+     * 前视窗口内限幅所需增益的单调队列，求滑动最小值；窗口为 lookAhead + 1 帧，先出队过期元素再入队，不会超出容量
+     */
+    private final float[] mMinValue;
+
+    private final long[] mMinFrame;
+
+    private int mMinHead;
+
+    private int mMinSize;
+
+    /**
+     * 最近 lookAhead + 1 帧的窗口最小值及其和，平均后作为限幅增益
+     */
+    private final float[] mMinHistory;
+
+    private int mHistoryPos;
+
+    private double mHistorySum;
+
+    private long mFrame;
+
+    private float mMeanSquare;
+
+    private float mGain = 1f;
+
+    private float mLimiterGain = 1f;
+
+    /**
+     * @param sampleRate 采样率
+     * @param channels 声道数
+     * @param targetDb 目标 RMS 电平 dBFS
+     * @param maxGain 自动增益上限（倍数）
+     * @param ceilingDb 限幅上限 dBFS
+     * @param lookAheadMs 前视时间 ms
+     */
+    public AutoGainLimiter(int sampleRate, int channels, float targetDb, float maxGain, float ceilingDb,
+            int lookAheadMs) {
+        mChannels = Math.max(1, channels);
+        mTarget = dbToLinear(targetDb);
+        mMaxGain = Math.max(1f, maxGain);
+        mCeiling = Math.min(1f, dbToLinear(ceilingDb)) * (FULL_SCALE - 1) / FULL_SCALE;
+        mGate = dbToLinear(GATE_DB) * dbToLinear(GATE_DB);
+        mRmsCoeff = coeff(RMS_WINDOW_MS, sampleRate);
+        mAttackCoeff = coeff(AGC_ATTACK_MS, sampleRate);
+        mReleaseCoeff = coeff(AGC_RELEASE_MS, sampleRate);
+        mLimiterReleaseCoeff = coeff(LIMITER_RELEASE_MS, sampleRate);
+        mLookAhead = Math.max(1, sampleRate * lookAheadMs / 1000);
+        mDelay = new float[mLookAhead * mChannels];
+        mMinValue = new float[mLookAhead + 1];
+        mMinFrame = new long[mLookAhead + 1];
+        mMinHistory = new float[mLookAhead + 1];
+        resetHistory();
+    }
+
+    public AutoGainLimiter(int sampleRate, int channels, float targetDb, float maxGain, float ceilingDb) {
+        this(sampleRate, channels, targetDb, maxGain, ceilingDb, DEFAULT_LOOK_AHEAD_MS);
+    }
+
+    private static float dbToLinear(float db) {
+        return (float) Math.pow(10, db / 20);
+    }
+
+    /**
+     * 一阶平滑系数
+     */
+    private static float coeff(float ms, int sampleRate) {
+        return (float) (1 - Math.exp(-1000.0 / (ms * sampleRate)));
+    }
+
+    /**
+     * 就地处理交错排列的采样，length 应为整帧
+     */
+    public void process(short[] samples, int offset, int length) {
+        int end = offset + length - length % mChannels;
+        for (int i = offset; i < end; i += mChannels) {
+            float peak = 0;
+            float sum = 0;
+            for (int c = 0; c < mChannels; c++) {
+                float x = samples[i + c] / FULL_SCALE;
+                sum += x * x;
+                float abs = x < 0 ? -x : x;
+                if (abs > peak) peak = abs;
+            }
+            int d = mDelayPos * mChannels;
+            float gain = processFrame(sum / mChannels, peak);
+            for (int c = 0; c < mChannels; c++) {
+                float out = mDelay[d + c] * gain;
+                mDelay[d + c] = samples[i + c] / FULL_SCALE * mGain;
+                samples[i + c] = toShort(out);
+            }
+            advance();
+        }
+    }
+
+    /**
+     * 就地处理 16bit 小端 PCM，length 应为整帧
+     */
+    public void process(byte[] pcm, int offset, int length) {
+        int frameBytes = mChannels * 2;
+        int end = offset + length - length % frameBytes;
+        for (int i = offset; i < end; i += frameBytes) {
+            float peak = 0;
+            float sum = 0;
+            for (int c = 0, p = i; c < mChannels; c++, p += 2) {
+                float x = (short) ((pcm[p] & 0xff) | ((pcm[p + 1] & 0xff) << 8)) / FULL_SCALE;
+                sum += x * x;
+                float abs = x < 0 ? -x : x;
+                if (abs > peak) peak = abs;
+            }
+            int d = mDelayPos * mChannels;
+            float gain = processFrame(sum / mChannels, peak);
+            for (int c = 0, p = i; c < mChannels; c++, p += 2) {
+                float out = mDelay[d + c] * gain;
+                mDelay[d + c] = (short) ((pcm[p] & 0xff) | ((pcm[p + 1] & 0xff) << 8)) / FULL_SCALE * mGain;
+                short s = toShort(out);
+                pcm[p] = (byte) s;
+                pcm[p + 1] = (byte) (s >> 8);
+            }
+            advance();
+        }
+    }
+
+    /**
+     * 更新自动增益并将新帧加入前视窗口
+     *
+     * @return 延迟线中最旧一帧应使用的限幅增益
+     */
+    private float processFrame(float meanSquare, float peak) {
+        mMeanSquare += (meanSquare - mMeanSquare) * mRmsCoeff;
+        if (mMeanSquare > mGate) {
+            float desired = mTarget / (float) Math.sqrt(mMeanSquare);
+            if (desired > mMaxGain) desired = mMaxGain;
+            mGain += (desired - mGain) * (desired < mGain ? mAttackCoeff : mReleaseCoeff);
+        }
+
+        float level = peak * mGain;
+        float required = level > mCeiling ? mCeiling / level : 1f;
+        // 窗口为 [mFrame - lookAhead, mFrame]，先移除过期的队首
+        while (mMinSize > 0 && mMinFrame[mMinHead] < mFrame - mLookAhead) {
+            mMinHead = (mMinHead + 1) % mMinValue.length;
+            mMinSize--;
+        }
+        // 单调队列：队尾不小于新值的元素不可能再成为最小值
+        while (mMinSize > 0 && mMinValue[(mMinHead + mMinSize - 1) % mMinValue.length] >= required) {
+            mMinSize--;
+        }
+        int tail = (mMinHead + mMinSize) % mMinValue.length;
+        mMinValue[tail] = required;
+        mMinFrame[tail] = mFrame;
+        mMinSize++;
+
+        // 平均的每一项都是覆盖输出帧的窗口最小值，平均值不大于输出帧所需的增益
+        float windowMin = mMinValue[mMinHead];
+        mHistorySum += windowMin - mMinHistory[mHistoryPos];
+        mMinHistory[mHistoryPos] = windowMin;
+        if (++mHistoryPos == mMinHistory.length) {
+            mHistoryPos = 0;
+            // 每轮重新求和，避免累加误差
+            mHistorySum = 0;
+            for (float value : mMinHistory) mHistorySum += value;
+        }
+        float ramp = (float) (mHistorySum / mMinHistory.length);
+
+        if (ramp < mLimiterGain) {
+            mLimiterGain = ramp;
+        } else {
+            mLimiterGain += (ramp - mLimiterGain) * mLimiterReleaseCoeff;
+        }
+        return mLimiterGain;
+    }
+
+    private void advance() {
+        mFrame++;
+        if (++mDelayPos == mLookAhead) mDelayPos = 0;
+    }
+
+    private static short toShort(float value) {
+        int s = Math.round(value * FULL_SCALE);
+        if (s > Short.MAX_VALUE) return Short.MAX_VALUE;
+        if (s < Short.MIN_VALUE) return Short.MIN_VALUE;
+        return (short) s;
+    }
+
+    /**
+     * 当前自动增益（倍数）
+     */
+    public float getGain() {
+        return mGain;
+    }
+
+    /**
+     * 清空延迟线与统计，增益恢复为 1
+     */
+    public void reset() {
+        Arrays.fill(mDelay, 0);
+        mDelayPos = 0;
+        mMinHead = 0;
+        mMinSize = 0;
+        mFrame = 0;
+        mMeanSquare = 0;
+        mGain = 1f;
+        mLimiterGain = 1f;
+        resetHistory();
+    }
+
+    private void resetHistory() {
+        Arrays.fill(mMinHistory, 1f);
+        mHistoryPos = 0;
+        mHistorySum = mMinHistory.length;
+    }
+}
@@ -1,100 +1,340 @@
 package com.xiaoxuan.audio;
 
-import android.os.Build;
-import android.os.SystemClock;
 import android.util.Log;
 
-import androidx.annotation.RequiresApi;
+import com.xiaoxuan.audio.recorderlib.recorder.wav.WavUtils;
+import com.xiaoxuan.audio.recorderlib.utils.SegmentMerger;
 
-import com.xiaoxuan.audio.recorderlib.utils.ByteUtils;
-
-import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.Objects;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
 
-public class PCMGainer implements Closeable {
+/**
+ * 16bit PCM 归一化增益：录音过程中统计整段录音（含暂停恢复）的绝对值峰值，
+ * 结束时只做一次增益，与分段合并在同一遍读写中完成。
+ * <p>
+ * 已完成的 PCM/WAV 文件可通过 {@link #normalize(File, float)} 以内存映射的方式就地处理。
+ */
+public class PCMGainer {
 
     private static final String TAG = PCMGainer.class.getSimpleName();
-    private float mMaxGain;
-    private FileOutputStream mTmpOutStream;
-    private Path mTmpTo;
-    private Path mSaveTo;
 
-    public PCMGainer(Path saveTo, float maxGain) throws IOException {
-        mSaveTo = saveTo;
+    /**
+     * 合并/增益时每次读写的字节数
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    /**
+     * 内存映射时每个窗口的字节数
+     */
+    private static final long MAP_WINDOW = 32L * 1024 * 1024;
+
+    /**
+     * 映射窗口内批量读写的采样数
+     */
+    private static final int SCAN_SAMPLES = 8192;
+
+    private final float mMaxGain;
+
+    private int mMaxAmp;
+
+    private ByteBuffer mBuffer;
+
+    /**
+     * @param maxGain 允许的最大增益，不大于 1 时不做处理
+     */
+    public PCMGainer(float maxGain) {
         mMaxGain = maxGain;
-        Path parent = mSaveTo.getParent();
-        String tmpName = SystemClock.uptimeMillis() + ".pcm";
-        if (Objects.nonNull(parent)) mTmpTo = parent.resolve(tmpName);
-        else mTmpTo = Paths.get(tmpName);
-        File tmpFile = mTmpTo.toFile();
-        if (tmpFile.exists()) tmpFile.delete();
-        tmpFile.createNewFile();
-        mTmpOutStream = new FileOutputStream(tmpFile);
-        Log.d(TAG, String.format("saveTo=%s, maxGain=%f", saveTo, maxGain));
+        Log.d(TAG, String.format("maxGain=%f", maxGain));
     }
 
-    public PCMGainer(File saveTo, float maxGain) throws IOException {
-        this(saveTo.toPath(), maxGain);
+    /**
+     * 统计峰值，录音过程中对每次读取的数据调用
+     */
+    public void track(byte[] arr, int offset, int len) {
+        if (mMaxGain <= 1) return;
+        int end = offset + len - (len & 1);
+        int max = mMaxAmp;
+        for (int i = offset; i < end; i += 2) {
+            int sample = (short) ((arr[i] & 0xff) | ((arr[i + 1] & 0xff) << 8));
+            if (sample < 0) sample = -sample;
+            if (sample > max) max = sample;
+        }
+        mMaxAmp = max;
+    }
+
+    /**
+     * 实际使用的增益：将峰值放大到满幅，但不超过 maxGain
+     */
+    public float gain() {
+        if (mMaxGain <= 1 || mMaxAmp == 0) return 1f;
+        return Math.min(allowMaxGain(), mMaxGain);
     }
 
-    private short mMaxAmp = Short.MIN_VALUE;
+    public float allowMaxGain() {
+        return mMaxAmp == 0 ? Float.MAX_VALUE : (float) Short.MAX_VALUE / mMaxAmp;
+    }
 
-    public void write(byte[] arr, int offset, int len) {
-        selectMax(arr);
-        try {
-            mTmpOutStream.write(arr, offset, len);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 开始新的录音时清空峰值
+     */
+    public void reset() {
+        mMaxAmp = 0;
+    }
+
+    /**
+     * 一遍完成 读取分段 -> 增益 -> 写入输出文件，成功后删除分段；增益在创建时按当前峰值确定
+     *
+     * @param segments 按顺序合并的分段
+     * @param saveTo 输出文件，已存在时覆盖；取消或失败时删除
+     */
+    public SegmentMerger merger(List<File> segments, File saveTo) {
+        return new GainMerger(segments, saveTo, gain());
+    }
+
+    /**
+     * 按统计的峰值在原文件上就地增益
+     *
+     * @param channel 可读写的文件
+     * @param position PCM 数据起始位置
+     * @param length PCM 数据字节数
+     */
+    public void applyInPlace(FileChannel channel, long position, long length) throws IOException {
+        float gain = gain();
+        Log.d(TAG, "apply gain=" + gain);
+        // 峰值为 -32768 时 gain() 略小于 1，不值得为此重写整个文件
+        if (gain <= 1) return;
+        applyGain(channel, position, length, gain);
+    }
+
+    /**
+     * 对已完成的 16bit PCM 或 WAV 文件就地归一化：先扫描峰值，再将峰值放大到满幅，但不超过 maxGain。
+     * 只放大不衰减，已达满幅时不修改文件
+     *
+     * @param file RIFF WAVE 文件按 data 块处理，须为 16bit PCM；其余按裸 PCM 处理
+     * @return 实际使用的增益
+     * @throws IOException 读写失败，或 WAV 不是 16bit PCM
+     */
+    public static float normalize(File file, float maxGain) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long[] range = dataRange(channel);
+            int peak = scanPeak(channel, range[0], range[1]);
+            float gain = peak == 0 ? 1f : Math.min((float) Short.MAX_VALUE / peak, maxGain);
+            Log.d(TAG, String.format("normalize %s peak=%d gain=%f", file, peak, gain));
+            if (gain <= 1) return 1f;
+            applyGain(channel, range[0], range[1], gain);
+            return gain;
         }
     }
 
-    @Override
-    public void close() {
-        try {
-            mTmpOutStream.flush();
-            mTmpOutStream.close();
-        } catch (IOException ioException) {
-            ioException.printStackTrace();
+    /**
+     * 对已完成的 16bit PCM 或 WAV 文件就地应用固定增益，超出范围时限幅
+     *
+     * @throws IOException 读写失败，或 WAV 不是 16bit PCM
+     */
+    public static void applyGain(File file, float gain) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long[] range = dataRange(channel);
+            applyGain(channel, range[0], range[1], gain);
         }
-        Log.d(TAG, "allow max gain=" + allowMaxGain());
-        try (FileInputStream in = new FileInputStream(mTmpTo.toFile())){
-            int len;
-            byte[] buffer = new byte[1024];
-            try (FileOutputStream out = new FileOutputStream(mSaveTo.toFile())){
-                while ((len = in.read(buffer, 0, buffer.length)) != -1)
-                {
-                    short[] data = toGain(ByteUtils.toShorts(buffer));
-                    out.write(ByteUtils.toBytes(data), 0, len);
-                    out.flush();
+    }
+
+    /**
+     * 16bit PCM 或 WAV 文件的绝对值峰值
+     *
+     * @throws IOException 读取失败，或 WAV 不是 16bit PCM
+     */
+    public static int scanPeak(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel channel = raf.getChannel();
+            long[] range = dataRange(channel);
+            return scanPeak(channel, range[0], range[1]);
+        }
+    }
+
+    /**
+     * @return {起始位置, 字节数}，不是 WAV 时为整个文件
+     * @throws IOException WAV 不是 16bit PCM，按 16bit 处理会破坏数据
+     */
+    private static long[] dataRange(FileChannel channel) throws IOException {
+        long[] range = WavUtils.findDataChunk(channel);
+        if (range == null) return new long[]{0, channel.size()};
+        int[] format = WavUtils.findFormatChunk(channel);
+        if (format == null || format[0] != 1 || format[3] != 16) {
+            throw new IOException(format == null ? "wav without fmt chunk"
+                    : "unsupported wav format " + format[0] + ", bits " + format[3]);
+        }
+        return range;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, FileChannel.MapMode mode, long position, long size)
+            throws IOException {
+        MappedByteBuffer mapped = channel.map(mode, position, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
+    private static int scanPeak(FileChannel channel, long position, long length) throws IOException {
+        short[] samples = new short[SCAN_SAMPLES];
+        int peak = 0;
+        long end = position + length - (length & 1);
+        while (position < end) {
+            long size = Math.min(MAP_WINDOW, end - position);
+            ShortBuffer shorts = map(channel, FileChannel.MapMode.READ_ONLY, position, size).asShortBuffer();
+            while (shorts.hasRemaining()) {
+                int count = Math.min(samples.length, shorts.remaining());
+                shorts.get(samples, 0, count);
+                for (int i = 0; i < count; i++) {
+                    peak = Math.max(peak, Math.abs(samples[i]));
                 }
             }
-        }catch (IOException ioException) {
-            ioException.printStackTrace();
+            position += size;
         }
-        mTmpTo.toFile().delete();
+        return Math.min(peak, Short.MAX_VALUE + 1);
     }
 
-    private short[] toGain(short[] desc)
-    {
-        float gain = (float) Short.MAX_VALUE / mMaxAmp;
-        gain = gain > mMaxGain? mMaxGain : gain;
-        for (int i = 0; i < desc.length; ++i) desc[i] *= gain;
-        return desc;
+    /**
+     * 以内存映射的方式就地增益，每个窗口内用同一个 short[] 批量读写
+     */
+    private static void applyGain(FileChannel channel, long position, long length, float gain) throws IOException {
+        if (gain == 1f) return;
+        short[] samples = new short[SCAN_SAMPLES];
+        long end = position + length - (length & 1);
+        while (position < end) {
+            long size = Math.min(MAP_WINDOW, end - position);
+            MappedByteBuffer mapped = map(channel, FileChannel.MapMode.READ_WRITE, position, size);
+            ShortBuffer shorts = mapped.asShortBuffer();
+            while (shorts.hasRemaining()) {
+                int index = shorts.position();
+                int count = Math.min(samples.length, shorts.remaining());
+                shorts.get(samples, 0, count);
+                for (int i = 0; i < count; i++) {
+                    int sample = Math.round(samples[i] * gain);
+                    samples[i] = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, sample));
+                }
+                shorts.position(index);
+                shorts.put(samples, 0, count);
+            }
+            mapped.force();
+            position += size;
+        }
+    }
+
+    private class GainMerger implements SegmentMerger {
+
+        private final List<File> segments;
+
+        private final File saveTo;
+
+        private final float gain;
+
+        private OnProgressListener onProgressListener;
+
+        private volatile boolean canceled;
+
+        GainMerger(List<File> segments, File saveTo, float gain) {
+            this.segments = segments;
+            this.saveTo = saveTo;
+            this.gain = gain;
+        }
+
+        @Override
+        public GainMerger setOnProgressListener(OnProgressListener onProgressListener) {
+            this.onProgressListener = onProgressListener;
+            return this;
+        }
+
+        @Override
+        public void cancel() {
+            canceled = true;
+        }
+
+        @Override
+        public boolean merge() {
+            if (segments == null || segments.isEmpty()) return false;
+            Log.d(TAG, "merge gain=" + gain);
+            long total = 0;
+            for (File segment : segments) total += segment.length();
+            boolean merged = false;
+            try {
+                merged = write(total);
+            } catch (IOException e) {
+                Log.e(TAG, "merge failed", e);
+            } finally {
+                // 输出文件从头写入，失败时整个删除即可，分段保留
+                if (!merged) saveTo.delete();
+            }
+            if (!merged) return false;
+            for (File segment : segments) segment.delete();
+            segments.clear();
+            return true;
+        }
+
+        private boolean write(long total) throws IOException {
+            ByteBuffer buffer = buffer();
+            long done = 0;
+            notifyProgress(done, total);
+            try (FileOutputStream fos = new FileOutputStream(saveTo)) {
+                FileChannel out = fos.getChannel();
+                for (File segment : segments) {
+                    try (FileInputStream fis = new FileInputStream(segment)) {
+                        FileChannel in = fis.getChannel();
+                        buffer.clear();
+                        int n;
+                        do {
+                            if (canceled) {
+                                Log.w(TAG, "merge canceled");
+                                return false;
+                            }
+                            n = in.read(buffer);
+                            buffer.flip();
+                            int limit = buffer.limit();
+                            // 不完整的采样留到下一次，读到末尾时原样写出
+                            int count = n < 0 ? limit : limit & ~1;
+                            apply(buffer, count & ~1, gain);
+                            buffer.limit(count);
+                            while (buffer.hasRemaining()) out.write(buffer);
+                            buffer.limit(limit);
+                            buffer.compact();
+                            done += count;
+                            notifyProgress(done, total);
+                        } while (n >= 0);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void notifyProgress(long merged, long total) {
+            if (onProgressListener != null) onProgressListener.onProgress(merged, total);
+        }
     }
 
-    public float allowMaxGain()
-    {
-        return (float) Short.MAX_VALUE / mMaxAmp;
+    private ByteBuffer buffer() {
+        if (mBuffer == null) mBuffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        return mBuffer;
     }
 
-    private void selectMax(byte[] arr) {
-        short[] shortArray = ByteUtils.toShorts(arr);
-        for (int i = 0; i < shortArray.length; ++i) if (mMaxAmp < shortArray[i]) mMaxAmp = shortArray[i];
+    /**
+     * 对 buffer 前 count 字节（16bit 小端）应用增益，超出范围时限幅
+     */
+    private static void apply(ByteBuffer buffer, int count, float gain) {
+        if (gain == 1f) return;
+        for (int i = 0; i < count; i += 2) {
+            int sample = Math.round(buffer.getShort(i) * gain);
+            if (sample > Short.MAX_VALUE) sample = Short.MAX_VALUE;
+            else if (sample < Short.MIN_VALUE) sample = Short.MIN_VALUE;
+            buffer.putShort(i, (short) sample);
+        }
     }
 }
@@ -9,10 +9,16 @@ import com.xiaoxuan.audio.recorderlib.recorder.RecordConfig;
 import com.xiaoxuan.audio.recorderlib.recorder.RecordHelper;
 import com.xiaoxuan.audio.recorderlib.recorder.RecordService;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftBufferListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLevelListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLoudnessListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordMergeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordResultListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordSoundSizeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordStateListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordWaveformListener;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LoudnessResult;
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
 public class RecordManager
@@ -117,6 +123,14 @@ public class RecordManager
         RecordService.setRecordFftDataListener(recordFftDataListener);
     }
     
+    /**
+     * 录音可视化数据回调，复用数组，不产生垃圾对象
+     */
+    public void setRecordFftBufferListener(RecordFftBufferListener recordFftBufferListener)
+    {
+        RecordService.setRecordFftBufferListener(recordFftBufferListener);
+    }
+    
     /**
      * 录音文件转换结束回调
      */
@@ -133,6 +147,56 @@ public class RecordManager
         RecordService.setRecordSoundSizeListener(listener);
     }
     
+    /**
+     * 录音电平监听回调，RMS 与峰值 dBFS，在采集线程中按时域计算
+     */
+    public void setRecordLevelListener(RecordLevelListener listener)
+    {
+        RecordService.setRecordLevelListener(listener);
+    }
+    
+    /**
+     * EBU R128 响度监听回调：录音中实时返回瞬时/短期/整体响度与真峰值，结束时返回最终结果
+     */
+    public void setRecordLoudnessListener(RecordLoudnessListener listener)
+    {
+        RecordService.setRecordLoudnessListener(listener);
+    }
+    
+    /**
+     * 实时波形包络回调，按 {@link RecordConfig#setWaveformPixelsPerSecond} 输出 最小值/最大值/RMS，可直接绘制
+     */
+    public void setRecordWaveformListener(RecordWaveformListener listener)
+    {
+        RecordService.setRecordWaveformListener(listener);
+    }
+    
+    /**
+     * PCM 格式停止录音后合并分段的进度回调
+     */
+    public void setRecordMergeListener(RecordMergeListener listener)
+    {
+        RecordService.setRecordMergeListener(listener);
+    }
+    
+    /**
+     * 取消 PCM 分段合并，分段文件保留在缓存目录中
+     */
+    public void cancelMerge()
+    {
+        RecordService.cancelMerge();
+    }
+    
+    /**
+     * 获取最近一次录音的响度结果，需设置响度回调或开启 {@link RecordConfig#setLoudnessEnabled}
+     *
+     * @return 响度结果，未计算时为 null
+     */
+    public LoudnessResult getLoudnessResult()
+    {
+        return RecordService.getLoudnessResult();
+    }
+    
     public boolean changeFormat(RecordConfig.RecordFormat recordFormat)
     {
         return RecordService.changeFormat(recordFormat);
@@ -0,0 +1,141 @@
+package com.xiaoxuan.audio.recorderlib.recorder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 一次 PCM 录音的分段：开始和每次恢复录音各写一段，停止后按录制顺序合并
+ * <p>
+ * 分段在打开时即加入列表。暂停后直接停止时由调用 stop 的线程合并，不再经过采集线程，
+ * 所以不能等到采集结束、按当时的状态决定是否加入；合并前通过 {@link #awaitFiles()} 等待最后一段写完。
+ */
+final class PcmSegments
+{
+    private final List<File> files = new CopyOnWriteArrayList<>();
+
+    /**
+     * 正在写入的分段数
+     */
+    private int writing;
+
+    /**
+     * 分段序号，不随 {@link #reset()} 清零，避免与上次遗留的分段重名
+     */
+    private int sequence;
+
+    /**
+     * 新的录音开始，上次合并失败遗留的分段不再参与合并，文件保留
+     */
+    void reset()
+    {
+        files.clear();
+    }
+
+    /**
+     * 新分段的文件：同一秒内暂停恢复时时间戳相同，以序号区分，且不与目录中已有的文件重名
+     *
+     * @param prefix 文件名前缀，如带时间戳的名称
+     */
+    synchronized File newFile(File dir, String prefix)
+    {
+        File file;
+        do
+        {
+            file = new File(dir, String.format(Locale.US, "%s_%d.pcm", prefix, ++sequence));
+        }
+        while (file.exists());
+        return file;
+    }
+
+    /**
+     * 登记并打开一个分段，关闭返回的流即写入完成
+     *
+     * @throws IllegalStateException 分段已在列表中，此时不会打开（截断）已录制的文件
+     */
+    FileOutputStream open(File segment)
+        throws IOException
+    {
+        synchronized (this)
+        {
+            if (files.contains(segment))
+            {
+                throw new IllegalStateException("duplicate pcm segment: " + segment.getAbsolutePath());
+            }
+            files.add(segment);
+            writing++;
+        }
+        try
+        {
+            return new SegmentOutputStream(segment);
+        }
+        catch (IOException e)
+        {
+            synchronized (this)
+            {
+                files.remove(segment);
+            }
+            finishWriting();
+            throw e;
+        }
+    }
+
+    private synchronized void finishWriting()
+    {
+        writing--;
+        notifyAll();
+    }
+
+    /**
+     * 等待正在写入的分段关闭后返回分段列表
+     */
+    synchronized List<File> awaitFiles()
+        throws InterruptedException
+    {
+        while (writing > 0)
+        {
+            wait();
+        }
+        return files;
+    }
+
+    /**
+     * 按录制顺序的分段，由合并方修改：合并成功后清空
+     */
+    List<File> getFiles()
+    {
+        return files;
+    }
+
+    private class SegmentOutputStream extends FileOutputStream
+    {
+        private boolean closed;
+
+        SegmentOutputStream(File file)
+            throws IOException
+        {
+            super(file);
+        }
+
+        @Override
+        public void close()
+            throws IOException
+        {
+            try
+            {
+                super.close();
+            }
+            finally
+            {
+                if (!closed)
+                {
+                    closed = true;
+                    finishWriting();
+                }
+            }
+        }
+    }
+}
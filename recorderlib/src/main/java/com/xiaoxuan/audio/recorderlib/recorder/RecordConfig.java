@@ -3,9 +3,15 @@ package com.xiaoxuan.audio.recorderlib.recorder;
 import android.media.AudioFormat;
 import android.os.Environment;
 
+import com.xiaoxuan.audio.recorderlib.recorder.mp3.Mp3Encoder;
+
 import java.io.Serializable;
 import java.util.Locale;
 
+import fftlib.FftEngine;
+import fftlib.FftFactory;
+import fftlib.FftWindow;
+
 public class RecordConfig implements Serializable
 {
     /**
@@ -28,6 +34,121 @@ public class RecordConfig implements Serializable
      */
     private int sampleRate = 16000;
     
+    /**
+     * 频谱每帧采样点数，2的幂
+     */
+    private int fftSize = FftFactory.DEFAULT_FFT_SIZE;
+    
+    /**
+     * 频谱窗函数
+     */
+    private FftWindow fftWindow = FftWindow.HANN;
+    
+    /**
+     * 频谱帧移（采样点数），默认与 fftSize 相同即不重叠
+     */
+    private int fftHopSize = FftFactory.DEFAULT_FFT_SIZE;
+    
+    /**
+     * 频谱处理等级，Original 以外的等级按频带输出
+     */
+    private FftFactory.Level fftLevel = FftFactory.Level.Original;
+    
+    /**
+     * 按频带输出时的频带数量
+     */
+    private int fftBandCount = FftFactory.DEFAULT_BAND_COUNT;
+    
+    /**
+     * {@link com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftBufferListener} 是否输出 dBFS，默认输出线性幅值
+     */
+    private boolean fftDbScale = false;
+    
+    /**
+     * 电平表积分时间 ms，即音量回调的间隔
+     */
+    private int levelIntegrationMs = 50;
+    
+    /**
+     * 电平表峰值保持时间 ms
+     */
+    private int levelPeakHoldMs = 1000;
+    
+    /**
+     * 是否计算 EBU R128 响度，设置了响度回调时总会计算
+     */
+    private boolean loudnessEnabled = false;
+    
+    /**
+     * 波形包络每秒的点数
+     */
+    private int waveformPixelsPerSecond = 100;
+    
+    /**
+     * 波形包络回调间隔 ms
+     */
+    private int waveformBatchMs = 33;
+    
+    /**
+     * 增益模式，默认录音结束时归一化
+     */
+    private GainMode gainMode = GainMode.NORMALIZE;
+    
+    /**
+     * 自动增益的目标 RMS 电平 dBFS
+     */
+    private float agcTargetDb = -18f;
+    
+    /**
+     * 自动增益上限（倍数）
+     */
+    private float agcMaxGain = 8f;
+    
+    /**
+     * 限幅上限 dBFS
+     */
+    private float limiterCeilingDb = -1f;
+    
+    /**
+     * MP3 编码缓冲区分块数，每块为一次采集的数据
+     */
+    private int mp3BufferCapacity = 64;
+    
+    /**
+     * MP3 编码线程积累多少块才唤醒一次
+     */
+    private int mp3WakeupBatch = 4;
+    
+    /**
+     * MP3 编码缓冲区满时的处理策略
+     */
+    private BacklogPolicy backlogPolicy = BacklogPolicy.SPILL;
+    
+    /**
+     * 双声道录音时 MP3 的声道模式
+     */
+    private Mp3ChannelMode mp3ChannelMode = Mp3ChannelMode.JOINT_STEREO;
+    
+    /**
+     * MP3 码率模式
+     */
+    private Mp3BitrateMode mp3BitrateMode = Mp3BitrateMode.CBR;
+    
+    /**
+     * MP3 码率 kbps，CBR 为固定码率，ABR 为平均码率
+     */
+    private int mp3Bitrate = 128;
+    
+    /**
+     * MP3 编码算法质量 0~9，0 最好最慢
+     */
+    private int mp3Quality = Mp3Encoder.DEFAULT_QUALITY;
+    
+    /**
+     * MP3 VBR 质量 0~9.999，0 码率最高
+     */
+    private float mp3VbrQuality = 4f;
+    
     /*
      * 录音文件存放路径，默认sdcard/Record
      */
@@ -187,6 +308,334 @@ public class RecordConfig implements Serializable
         return this;
     }
     
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+    
+    /**
+     * @param fftSize 频谱每帧采样点数，2的幂，不小于2；越大频率分辨率越高，CPU 占用也越高。
+     *            帧移原本等于 fftSize 或大于新的 fftSize 时改为新的 fftSize
+     * @throws IllegalArgumentException fftSize 不是2的幂
+     */
+    public RecordConfig setFftSize(int fftSize)
+    {
+        if (fftSize < 2 || !FftEngine.isPowerOfTwo(fftSize))
+        {
+            throw new IllegalArgumentException("fftSize is not a power of 2: " + fftSize);
+        }
+        if (fftHopSize == this.fftSize || fftHopSize > fftSize)
+        {
+            fftHopSize = fftSize;
+        }
+        this.fftSize = fftSize;
+        return this;
+    }
+    
+    public FftWindow getFftWindow()
+    {
+        return fftWindow;
+    }
+    
+    public RecordConfig setFftWindow(FftWindow fftWindow)
+    {
+        this.fftWindow = fftWindow;
+        return this;
+    }
+    
+    public int getFftHopSize()
+    {
+        return fftHopSize;
+    }
+    
+    /**
+     * @param fftHopSize 频谱帧移（采样点数），1 ~ fftSize，小于 fftSize 时帧之间重叠；需在 {@link #setFftSize(int)} 之后设置
+     * @throws IllegalArgumentException 帧移不在 1 ~ fftSize 之间
+     */
+    public RecordConfig setFftHopSize(int fftHopSize)
+    {
+        if (fftHopSize <= 0 || fftHopSize > fftSize)
+        {
+            throw new IllegalArgumentException("fftHopSize must be in 1.." + fftSize + ": " + fftHopSize);
+        }
+        this.fftHopSize = fftHopSize;
+        return this;
+    }
+    
+    public FftFactory.Level getFftLevel()
+    {
+        return fftLevel;
+    }
+    
+    /**
+     * @param fftLevel 频谱处理等级 Music/People/Maximal 时直接输出 fftBandCount 个频带，无需在界面上再次合并
+     */
+    public RecordConfig setFftLevel(FftFactory.Level fftLevel)
+    {
+        this.fftLevel = fftLevel;
+        return this;
+    }
+    
+    public int getFftBandCount()
+    {
+        return fftBandCount;
+    }
+    
+    public RecordConfig setFftBandCount(int fftBandCount)
+    {
+        this.fftBandCount = fftBandCount;
+        return this;
+    }
+    
+    public boolean isFftDbScale()
+    {
+        return fftDbScale;
+    }
+    
+    /**
+     * @param fftDbScale true: 输出 dBFS（满幅正弦为 0dB）；false: 输出线性幅值
+     */
+    public RecordConfig setFftDbScale(boolean fftDbScale)
+    {
+        this.fftDbScale = fftDbScale;
+        return this;
+    }
+    
+    public int getLevelIntegrationMs()
+    {
+        return levelIntegrationMs;
+    }
+    
+    /**
+     * @param levelIntegrationMs 电平表积分时间 ms，音量回调每个积分时间触发一次
+     */
+    public RecordConfig setLevelIntegrationMs(int levelIntegrationMs)
+    {
+        this.levelIntegrationMs = levelIntegrationMs;
+        return this;
+    }
+    
+    public int getLevelPeakHoldMs()
+    {
+        return levelPeakHoldMs;
+    }
+    
+    public RecordConfig setLevelPeakHoldMs(int levelPeakHoldMs)
+    {
+        this.levelPeakHoldMs = levelPeakHoldMs;
+        return this;
+    }
+    
+    public boolean isLoudnessEnabled()
+    {
+        return loudnessEnabled;
+    }
+    
+    /**
+     * @param loudnessEnabled 是否计算 EBU R128 响度，开启后录音结束可通过 RecordManager#getLoudnessResult 获取结果
+     */
+    public RecordConfig setLoudnessEnabled(boolean loudnessEnabled)
+    {
+        this.loudnessEnabled = loudnessEnabled;
+        return this;
+    }
+    
+    public int getWaveformPixelsPerSecond()
+    {
+        return waveformPixelsPerSecond;
+    }
+    
+    /**
+     * @param waveformPixelsPerSecond 波形包络每秒的点数，即每个点包含 sampleRate / waveformPixelsPerSecond 个采样
+     */
+    public RecordConfig setWaveformPixelsPerSecond(int waveformPixelsPerSecond)
+    {
+        this.waveformPixelsPerSecond = waveformPixelsPerSecond;
+        return this;
+    }
+    
+    public int getWaveformBatchMs()
+    {
+        return waveformBatchMs;
+    }
+    
+    /**
+     * @param waveformBatchMs 波形包络回调间隔 ms，通常与界面刷新率一致
+     */
+    public RecordConfig setWaveformBatchMs(int waveformBatchMs)
+    {
+        this.waveformBatchMs = waveformBatchMs;
+        return this;
+    }
+    
+    public GainMode getGainMode()
+    {
+        return gainMode;
+    }
+    
+    /**
+     * @param gainMode 增益模式，仅对 16bit 录音生效
+     */
+    public RecordConfig setGainMode(GainMode gainMode)
+    {
+        this.gainMode = gainMode;
+        return this;
+    }
+    
+    public float getAgcTargetDb()
+    {
+        return agcTargetDb;
+    }
+    
+    public RecordConfig setAgcTargetDb(float agcTargetDb)
+    {
+        this.agcTargetDb = agcTargetDb;
+        return this;
+    }
+    
+    public float getAgcMaxGain()
+    {
+        return agcMaxGain;
+    }
+    
+    /**
+     * @param agcMaxGain 自动增益上限（倍数），避免把底噪放得过大
+     */
+    public RecordConfig setAgcMaxGain(float agcMaxGain)
+    {
+        this.agcMaxGain = agcMaxGain;
+        return this;
+    }
+    
+    public float getLimiterCeilingDb()
+    {
+        return limiterCeilingDb;
+    }
+    
+    public RecordConfig setLimiterCeilingDb(float limiterCeilingDb)
+    {
+        this.limiterCeilingDb = limiterCeilingDb;
+        return this;
+    }
+    
+    public int getMp3BufferCapacity()
+    {
+        return mp3BufferCapacity;
+    }
+    
+    /**
+     * @param mp3BufferCapacity MP3 编码缓冲区分块数（向上取整为 2 的幂），即编码积压的内存上限；超出后按 backlogPolicy 处理
+     */
+    public RecordConfig setMp3BufferCapacity(int mp3BufferCapacity)
+    {
+        this.mp3BufferCapacity = mp3BufferCapacity;
+        return this;
+    }
+    
+    public int getMp3WakeupBatch()
+    {
+        return mp3WakeupBatch;
+    }
+    
+    /**
+     * @param mp3WakeupBatch MP3 编码线程积累多少块才唤醒一次，越大唤醒越少、延迟越高
+     */
+    public RecordConfig setMp3WakeupBatch(int mp3WakeupBatch)
+    {
+        this.mp3WakeupBatch = mp3WakeupBatch;
+        return this;
+    }
+    
+    public BacklogPolicy getBacklogPolicy()
+    {
+        return backlogPolicy;
+    }
+    
+    public RecordConfig setBacklogPolicy(BacklogPolicy backlogPolicy)
+    {
+        this.backlogPolicy = backlogPolicy;
+        return this;
+    }
+    
+    public Mp3BitrateMode getMp3BitrateMode()
+    {
+        return mp3BitrateMode;
+    }
+    
+    public RecordConfig setMp3BitrateMode(Mp3BitrateMode mp3BitrateMode)
+    {
+        this.mp3BitrateMode = mp3BitrateMode;
+        return this;
+    }
+    
+    public int getMp3Bitrate()
+    {
+        return mp3Bitrate;
+    }
+    
+    /**
+     * @param mp3Bitrate MP3 码率 kbps，CBR 为固定码率，ABR 为平均码率，VBR 时忽略
+     */
+    public RecordConfig setMp3Bitrate(int mp3Bitrate)
+    {
+        this.mp3Bitrate = mp3Bitrate;
+        return this;
+    }
+    
+    public int getMp3Quality()
+    {
+        return mp3Quality;
+    }
+    
+    /**
+     * @param mp3Quality MP3 编码算法质量 0~9，0 最好最慢
+     */
+    public RecordConfig setMp3Quality(int mp3Quality)
+    {
+        this.mp3Quality = mp3Quality;
+        return this;
+    }
+    
+    public float getMp3VbrQuality()
+    {
+        return mp3VbrQuality;
+    }
+    
+    /**
+     * @param mp3VbrQuality MP3 VBR 质量 0~9.999，0 码率最高，只用于 VBR 模式
+     */
+    public RecordConfig setMp3VbrQuality(float mp3VbrQuality)
+    {
+        this.mp3VbrQuality = mp3VbrQuality;
+        return this;
+    }
+    
+    /**
+     * 根据当前配置生成 MP3 编码参数
+     */
+    public Mp3Encoder.Options getMp3Options()
+    {
+        return new Mp3Encoder.Options().setBitrate(mp3Bitrate)
+            .setQuality(mp3Quality)
+            .setVbrMode(mp3BitrateMode.getLameVbrMode())
+            .setVbrQuality(mp3VbrQuality)
+            .setMode(getChannelCount() == 2 ? mp3ChannelMode.getLameMode() : Mp3Encoder.MODE_AUTO);
+    }
+    
+    public Mp3ChannelMode getMp3ChannelMode()
+    {
+        return mp3ChannelMode;
+    }
+    
+    /**
+     * @param mp3ChannelMode 双声道录音时 MP3 的声道模式，单声道录音时忽略
+     */
+    public RecordConfig setMp3ChannelMode(Mp3ChannelMode mp3ChannelMode)
+    {
+        this.mp3ChannelMode = mp3ChannelMode;
+        return this;
+    }
+    
     @Override
     public String toString()
     {
@@ -194,6 +643,103 @@ public class RecordConfig implements Serializable
             .getDefault(), "录制格式： %s,采样率：%sHz,位宽：%s bit,声道数：%s", format, sampleRate, getEncoding(), getChannelCount());
     }
     
+    /**
+     * MP3 编码跟不上采集、缓冲区（mp3BufferCapacity 个分块）已满时的处理策略
+     */
+    public enum BacklogPolicy
+    {
+        /**
+         * 写入磁盘上的溢出日志，编码追上后按顺序读回，不丢数据
+         */
+        SPILL,
+        /**
+         * 阻塞采集线程直到有空间，可能导致 AudioRecord 溢出
+         */
+        BLOCK,
+        /**
+         * 丢弃并计数
+         */
+        DROP
+    }
+    
+    /**
+     * MP3 码率模式，对应 LAME 的 vbr_mode；三种模式都会写入 Xing/Info 标签
+     */
+    public enum Mp3BitrateMode
+    {
+        /**
+         * 固定码率
+         */
+        CBR(Mp3Encoder.VBR_OFF),
+        /**
+         * 平均码率
+         */
+        ABR(Mp3Encoder.VBR_ABR),
+        /**
+         * 按 mp3VbrQuality 的可变码率，同等质量下文件最小
+         */
+        VBR(Mp3Encoder.VBR_DEFAULT);
+        
+        private final int lameVbrMode;
+        
+        public int getLameVbrMode()
+        {
+            return lameVbrMode;
+        }
+        
+        Mp3BitrateMode(int lameVbrMode)
+        {
+            this.lameVbrMode = lameVbrMode;
+        }
+    }
+    
+    /**
+     * 双声道录音时 MP3 的声道模式，对应 LAME 的 MPEG_mode
+     */
+    public enum Mp3ChannelMode
+    {
+        /**
+         * 联合立体声，按帧选择 L/R 或 M/S 编码
+         */
+        JOINT_STEREO(1),
+        /**
+         * 独立立体声
+         */
+        STEREO(0),
+        /**
+         * 由编码器混合为单声道，只编码一个声道
+         */
+        MONO(3);
+        
+        private final int lameMode;
+        
+        public int getLameMode()
+        {
+            return lameMode;
+        }
+        
+        Mp3ChannelMode(int lameMode)
+        {
+            this.lameMode = lameMode;
+        }
+    }
+    
+    public enum GainMode
+    {
+        /**
+         * 不处理
+         */
+        NONE,
+        /**
+         * 录音结束时按整段录音的峰值归一化，最大增益见 RecordManager#setMaxGain；MP3 不支持
+         */
+        NORMALIZE,
+        /**
+         * 采集时实时自动增益 + 前视限幅，适用于所有格式，录音结束无需再处理
+         */
+        AGC
+    }
+    
     public enum RecordFormat
     {
         /**
@@ -9,32 +9,46 @@ import android.os.Looper;
 
 import androidx.annotation.RequiresApi;
 
+import com.xiaoxuan.audio.AutoGainLimiter;
 import com.xiaoxuan.audio.PCMGainer;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftBufferListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLevelListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLoudnessListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordMergeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordResultListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordSoundSizeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordStateListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordWaveformListener;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LevelMeter;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LoudnessMeter;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LoudnessResult;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.WaveformEnvelope;
 import com.xiaoxuan.audio.recorderlib.recorder.mp3.Mp3EncodeThread;
-import com.xiaoxuan.audio.recorderlib.recorder.wav.WavUtils;
+import com.xiaoxuan.audio.recorderlib.recorder.wav.WavFileWriter;
 import com.xiaoxuan.audio.recorderlib.utils.ByteUtils;
+import com.xiaoxuan.audio.recorderlib.utils.FileMerger;
+import com.xiaoxuan.audio.recorderlib.utils.SegmentMerger;
 import com.xiaoxuan.audio.recorderlib.utils.FileUtils;
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import fftlib.FftFactory;
+import fftlib.Stft;
 
 public class RecordHelper
 {
@@ -46,6 +60,16 @@ public class RecordHelper
     
     private static final int RECORD_AUDIO_BUFFER_TIMES = 1;
     
+    /**
+     * 频谱数组缓存池大小，主线程来不及处理时丢弃新的帧
+     */
+    private static final int FFT_FRAME_POOL_SIZE = 4;
+    
+    /**
+     * 波形数组缓存池大小，主线程来不及处理时丢弃新的数据
+     */
+    private static final int WAVEFORM_FRAME_POOL_SIZE = 4;
+    
     private RecordStateListener recordStateListener;
     
     private RecordDataListener recordDataListener;
@@ -56,6 +80,21 @@ public class RecordHelper
     
     private RecordFftDataListener recordFftDataListener;
     
+    private RecordFftBufferListener recordFftBufferListener;
+    
+    private RecordLevelListener recordLevelListener;
+    
+    private RecordLoudnessListener recordLoudnessListener;
+    
+    private RecordWaveformListener recordWaveformListener;
+    
+    private RecordMergeListener recordMergeListener;
+    
+    /**
+     * 正在进行的 PCM 分段合并（零拷贝追加或合并时增益），用于取消
+     */
+    private volatile SegmentMerger segmentMerger;
+    
     private RecordConfig currentConfig;
     
     private AudioRecordThread audioRecordThread;
@@ -67,14 +106,29 @@ public class RecordHelper
     private Path mTmpFilesDir;
     private File tmpFile = null;
     
-    private List<File> files = new ArrayList<>();
+    private final PcmSegments segments = new PcmSegments();
     
     private Mp3EncodeThread mp3EncodeThread;
+    
+    /**
+     * WAV 格式直接写入 resultFile，整段录音（含暂停恢复）共用一个
+     */
+    private WavFileWriter wavFileWriter;
 
     private float recordVolume = 1f;
 
     private float mMaxGain = 1.0f;
     
+    /**
+     * 整段录音（含暂停恢复）共用，统计峰值并在结束时统一增益
+     */
+    private PCMGainer pcmGainer;
+    
+    /**
+     * AGC 模式下的实时增益，只在采集线程中使用
+     */
+    private AutoGainLimiter autoGainLimiter;
+    
     private RecordHelper()
     {
         mTmpFilesDir = getDefaultTmpFilesDir();
@@ -125,6 +179,51 @@ public class RecordHelper
         this.recordFftDataListener = recordFftDataListener;
     }
     
+    public void setRecordFftBufferListener(RecordFftBufferListener recordFftBufferListener)
+    {
+        this.recordFftBufferListener = recordFftBufferListener;
+    }
+    
+    public void setRecordLevelListener(RecordLevelListener recordLevelListener)
+    {
+        this.recordLevelListener = recordLevelListener;
+    }
+    
+    public void setRecordLoudnessListener(RecordLoudnessListener recordLoudnessListener)
+    {
+        this.recordLoudnessListener = recordLoudnessListener;
+    }
+    
+    public void setRecordWaveformListener(RecordWaveformListener recordWaveformListener)
+    {
+        this.recordWaveformListener = recordWaveformListener;
+    }
+    
+    public void setRecordMergeListener(RecordMergeListener recordMergeListener)
+    {
+        this.recordMergeListener = recordMergeListener;
+    }
+    
+    /**
+     * 取消正在进行的 PCM 分段合并，已写入输出文件的数据被截断，分段文件保留
+     */
+    public void cancelMerge()
+    {
+        SegmentMerger merger = segmentMerger;
+        if (merger != null)
+        {
+            merger.cancel();
+        }
+    }
+    
+    /**
+     * 最近一次录音的响度结果，未开启响度计算时为 null
+     */
+    public LoudnessResult getLoudnessResult()
+    {
+        return loudnessResult;
+    }
+    
     public void start(String filePath, RecordConfig config)
     {
         this.currentConfig = config;
@@ -133,8 +232,23 @@ public class RecordHelper
             Logger.e(TAG, "状态异常当前状态： %s", state.name());
             return;
         }
+        // 上次录音异常结束时写入器没有关闭，先收尾旧文件，本次在开始录制时重新创建
+        closeWavFile();
+        segments.reset();
         resultFile = new File(filePath);
-        tmpFile = mTmpFilesDir.resolve(newTmpFileName()).toFile();
+        tmpFile = segments.newFile(mTmpFilesDir.toFile(), newTmpFileName());
+        initFftFactory();
+        levelMeter = new LevelMeter(currentConfig.getSampleRate(),
+            currentConfig.getChannelCount(),
+            currentConfig.getEncoding(),
+            currentConfig.getLevelIntegrationMs(),
+            currentConfig.getLevelPeakHoldMs());
+        loudnessMeter = new LoudnessMeter(currentConfig.getSampleRate(),
+            currentConfig.getChannelCount(),
+            currentConfig.getEncoding());
+        loudnessResult = null;
+        initWaveformEnvelope();
+        initGain();
         
         Logger.d(TAG, "----------------开始录制 %s------------------------", currentConfig.getFormat().name());
         Logger.d(TAG, "参数： %s", currentConfig.toString());
@@ -155,6 +269,8 @@ public class RecordHelper
         
         if (state == RecordState.PAUSE)
         {
+            // 采集线程可能还在处理暂停前最后一次读取，等它退出后再收尾文件
+            joinRecordThread();
             makeFile();
             state = RecordState.IDLE;
             notifyState();
@@ -185,12 +301,35 @@ public class RecordHelper
             Logger.e(TAG, "状态异常当前状态： %s", state.name());
             return;
         }
-        tmpFile = mTmpFilesDir.resolve(newTmpFileName()).toFile();
+        // 上一个采集线程退出并释放 AudioRecord 后再开始新的分段
+        joinRecordThread();
+        tmpFile = segments.newFile(mTmpFilesDir.toFile(), newTmpFileName());
         Logger.i(TAG, "tmpPCM File: %s", tmpFile.getAbsolutePath());
         audioRecordThread = new AudioRecordThread();
         audioRecordThread.start();
     }
     
+    /**
+     * 等待暂停后的采集线程退出，之后才能在调用线程中关闭或合并它写入的文件
+     */
+    private void joinRecordThread()
+    {
+        AudioRecordThread thread = audioRecordThread;
+        if (thread == null || thread == Thread.currentThread())
+        {
+            return;
+        }
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Logger.e(e, TAG, e.getMessage());
+            Thread.currentThread().interrupt();
+        }
+    }
+    
     private void notifyState()
     {
         if (recordStateListener == null)
@@ -254,9 +393,108 @@ public class RecordHelper
     
     private FftFactory fftFactory = new FftFactory(FftFactory.Level.Original);
     
+    /**
+     * 流式频谱计算，只在采集线程中使用
+     */
+    private Stft stft;
+    
+    private final ArrayBlockingQueue<FftFrame> fftFramePool = new ArrayBlockingQueue<>(FFT_FRAME_POOL_SIZE);
+    
+    /**
+     * 每次重建频谱缓存池时加一，上一次录音遗留在主线程队列中的帧据此丢弃
+     */
+    private volatile int fftGeneration;
+    
+    private final Stft.OnFrameListener fftFrameListener = new Stft.OnFrameListener()
+    {
+        @Override
+        public void onFrame(double[] magnitude)
+        {
+            if (recordFftDataListener != null)
+            {
+                notifyFftData(fftFactory.makeFftData(magnitude));
+            }
+            if (recordFftBufferListener != null)
+            {
+                FftFrame frame = fftFramePool.poll();
+                if (frame != null)
+                {
+                    frame.length = fftFactory.makeFftData(magnitude, frame.data, currentConfig.isFftDbScale());
+                    mainHandler.post(frame);
+                }
+            }
+        }
+    };
+    
+    /**
+     * 复用的频谱帧，在主线程回调后放回缓存池
+     */
+    private class FftFrame implements Runnable
+    {
+        private final float[] data;
+        
+        private final int generation;
+        
+        private int length;
+        
+        FftFrame(int size, int generation)
+        {
+            this.data = new float[size];
+            this.generation = generation;
+        }
+        
+        @Override
+        public void run()
+        {
+            if (generation != fftGeneration)
+            {
+                // 缓存池已按新的 fftSize 重建，旧帧既不回调也不放回
+                return;
+            }
+            try
+            {
+                if (recordFftBufferListener != null)
+                {
+                    recordFftBufferListener.onFftData(data, length);
+                }
+            }
+            finally
+            {
+                if (generation == fftGeneration)
+                {
+                    fftFramePool.offer(this);
+                }
+            }
+        }
+    }
+    
+    private void initFftFactory()
+    {
+        fftFactory.release();
+        fftFactory = new FftFactory(currentConfig.getFftLevel()).setFftSize(currentConfig.getFftSize())
+            .setWindow(currentConfig.getFftWindow())
+            .setHopSize(currentConfig.getFftHopSize())
+            .setSampleRate(currentConfig.getSampleRate())
+            .setBandCount(currentConfig.getFftBandCount());
+        if (stft != null)
+        {
+            stft.release();
+        }
+        stft = new Stft(currentConfig.getFftSize(),
+            currentConfig.getFftHopSize(),
+            currentConfig.getFftWindow(),
+            currentConfig.getChannelCount());
+        int generation = ++fftGeneration;
+        fftFramePool.clear();
+        for (int i = 0; i < FFT_FRAME_POOL_SIZE; i++)
+        {
+            fftFramePool.offer(new FftFrame(fftFactory.getOutputSize(), generation));
+        }
+    }
+    
     private void notifyData(final byte[] data)
     {
-        if (recordDataListener == null && recordSoundSizeListener == null && recordFftDataListener == null)
+        if (recordDataListener == null)
         {
             return;
         }
@@ -269,39 +507,308 @@ public class RecordHelper
                 {
                     recordDataListener.onData(data);
                 }
-                
-                if (recordFftDataListener != null || recordSoundSizeListener != null)
+            }
+        });
+    }
+    
+    /**
+     * 电平表，只在采集线程中使用
+     */
+    private LevelMeter levelMeter;
+    
+    private final LevelReport levelReport = new LevelReport();
+    
+    /**
+     * 复用的电平回调，主线程尚未处理上一次结果时只更新数值，不重复投递
+     */
+    private class LevelReport implements Runnable, LevelMeter.OnLevelListener
+    {
+        private final AtomicBoolean pending = new AtomicBoolean();
+        
+        private volatile float rmsDb;
+        
+        private volatile float peakDb;
+        
+        @Override
+        public void onLevel(float rmsDb, float peakDb)
+        {
+            this.rmsDb = rmsDb;
+            this.peakDb = peakDb;
+            if (pending.compareAndSet(false, true))
+            {
+                mainHandler.post(this);
+            }
+        }
+        
+        @Override
+        public void run()
+        {
+            pending.set(false);
+            float rms = rmsDb;
+            if (recordSoundSizeListener != null)
+            {
+                recordSoundSizeListener.onSoundSize(Math.round(rms - LevelMeter.MIN_DB));
+            }
+            if (recordLevelListener != null)
+            {
+                recordLevelListener.onLevel(rms, peakDb);
+            }
+        }
+    }
+    
+    /**
+     * 响度表，整段录音（含暂停恢复）共用一个，只在采集线程中使用
+     */
+    private LoudnessMeter loudnessMeter;
+    
+    private volatile LoudnessResult loudnessResult;
+    
+    private final LoudnessReport loudnessReport = new LoudnessReport();
+    
+    /**
+     * 复用的响度回调，主线程尚未处理上一次结果时只更新数值，不重复投递
+     */
+    private class LoudnessReport implements Runnable, LoudnessMeter.OnLoudnessListener
+    {
+        private final AtomicBoolean pending = new AtomicBoolean();
+        
+        private volatile float momentary;
+        
+        private volatile float shortTerm;
+        
+        private volatile float integrated;
+        
+        private volatile float truePeak;
+        
+        @Override
+        public void onLoudness(float momentary, float shortTerm, float integrated, float truePeak)
+        {
+            this.momentary = momentary;
+            this.shortTerm = shortTerm;
+            this.integrated = integrated;
+            this.truePeak = truePeak;
+            if (recordLoudnessListener != null && pending.compareAndSet(false, true))
+            {
+                mainHandler.post(this);
+            }
+        }
+        
+        @Override
+        public void run()
+        {
+            pending.set(false);
+            if (recordLoudnessListener != null)
+            {
+                recordLoudnessListener.onLoudness(momentary, shortTerm, integrated, truePeak);
+            }
+        }
+    }
+    
+    private boolean isLoudnessEnabled()
+    {
+        return recordLoudnessListener != null || currentConfig.isLoudnessEnabled();
+    }
+    
+    /**
+     * 是否有需要在采集线程中分析数据的监听
+     */
+    private boolean isAnalyzing()
+    {
+        return recordFftDataListener != null || recordFftBufferListener != null || recordSoundSizeListener != null
+            || recordLevelListener != null || recordWaveformListener != null || isLoudnessEnabled();
+    }
+    
+    /**
+     * 录音结束，保存并回调整段录音的响度
+     */
+    private void finishLoudness()
+    {
+        if (!isLoudnessEnabled())
+        {
+            return;
+        }
+        final LoudnessResult result = loudnessMeter.getResult();
+        loudnessResult = result;
+        Logger.i(TAG, "响度：%s", result);
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (recordLoudnessListener != null)
                 {
-                    byte[] fftData = fftFactory.makeFftData(data);
-                    if (fftData != null)
-                    {
-                        if (recordSoundSizeListener != null)
-                        {
-                            recordSoundSizeListener.onSoundSize(getDb(fftData));
-                        }
-                        if (recordFftDataListener != null)
-                        {
-                            recordFftDataListener.onFftData(fftData);
-                        }
-                    }
+                    recordLoudnessListener.onLoudnessResult(result);
                 }
             }
         });
     }
     
-    private int getDb(byte[] data)
+    /**
+     * 波形包络，只在采集线程中使用
+     */
+    private WaveformEnvelope waveformEnvelope;
+    
+    private final ArrayBlockingQueue<WaveformFrame> waveformFramePool =
+        new ArrayBlockingQueue<>(WAVEFORM_FRAME_POOL_SIZE);
+    
+    private final WaveformEnvelope.OnEnvelopeListener envelopeListener = new WaveformEnvelope.OnEnvelopeListener()
+    {
+        @Override
+        public void onEnvelope(float[] data, int points)
+        {
+            WaveformFrame frame = waveformFramePool.poll();
+            if (frame != null)
+            {
+                System.arraycopy(data, 0, frame.data, 0, points * WaveformEnvelope.VALUES_PER_POINT);
+                frame.points = points;
+                mainHandler.post(frame);
+            }
+        }
+    };
+    
+    /**
+     * 复用的波形数据，在主线程回调后放回缓存池
+     */
+    private class WaveformFrame implements Runnable
+    {
+        private final float[] data;
+        
+        private int points;
+        
+        WaveformFrame(int size)
+        {
+            data = new float[size];
+        }
+        
+        @Override
+        public void run()
+        {
+            try
+            {
+                if (recordWaveformListener != null)
+                {
+                    recordWaveformListener.onWaveform(data, points);
+                }
+            }
+            finally
+            {
+                waveformFramePool.offer(this);
+            }
+        }
+    }
+    
+    private void initGain()
+    {
+        boolean pcm16 = currentConfig.getEncoding() == 16;
+        RecordConfig.GainMode gainMode = currentConfig.getGainMode();
+        pcmGainer = pcm16 && gainMode == RecordConfig.GainMode.NORMALIZE ? new PCMGainer(mMaxGain) : null;
+        autoGainLimiter = pcm16 && gainMode == RecordConfig.GainMode.AGC
+            ? new AutoGainLimiter(currentConfig.getSampleRate(),
+                currentConfig.getChannelCount(),
+                currentConfig.getAgcTargetDb(),
+                currentConfig.getAgcMaxGain(),
+                currentConfig.getLimiterCeilingDb())
+            : null;
+    }
+    
+    private void initWaveformEnvelope()
+    {
+        waveformEnvelope = new WaveformEnvelope(currentConfig.getSampleRate(),
+            currentConfig.getChannelCount(),
+            currentConfig.getEncoding(),
+            currentConfig.getWaveformPixelsPerSecond(),
+            currentConfig.getWaveformBatchMs());
+        waveformFramePool.clear();
+        for (int i = 0; i < WAVEFORM_FRAME_POOL_SIZE; i++)
+        {
+            waveformFramePool.offer(new WaveformFrame(
+                waveformEnvelope.getPointsPerBatch() * WaveformEnvelope.VALUES_PER_POINT));
+        }
+    }
+    
+    /**
+     * 一段录音（开始或恢复到暂停或停止）结束时调用，输出未满一批的波形数据
+     */
+    private void finishAnalyze()
+    {
+        if (recordWaveformListener != null)
+        {
+            waveformEnvelope.flush(envelopeListener);
+        }
+        else
+        {
+            waveformEnvelope.reset();
+        }
+    }
+    
+    /**
+     * 在采集线程中计算频谱、电平、响度和波形包络；频谱每凑满一个帧移回调一次，与 AudioRecord 每次读取的长度无关
+     */
+    private void analyzeData(byte[] data, int length)
+    {
+        if (length <= 0)
+        {
+            return;
+        }
+        if (recordFftDataListener != null || recordFftBufferListener != null)
+        {
+            stft.write(data, 0, length, fftFrameListener);
+        }
+        if (recordSoundSizeListener != null || recordLevelListener != null)
+        {
+            levelMeter.process(data, 0, length, levelReport);
+        }
+        if (isLoudnessEnabled())
+        {
+            loudnessMeter.process(data, 0, length, loudnessReport);
+        }
+        if (recordWaveformListener != null)
+        {
+            waveformEnvelope.process(data, 0, length, envelopeListener);
+        }
+    }
+    
+    private void analyzeData(short[] data, int length)
     {
-        double sum = 0;
-        double ave;
-        int length = data.length > 128 ? 128 : data.length;
-        int offsetStart = 8;
-        for (int i = offsetStart; i < length; i++)
+        if (length <= 0)
         {
-            sum += data[i];
+            return;
+        }
+        if (recordFftDataListener != null || recordFftBufferListener != null)
+        {
+            stft.write(data, 0, length, fftFrameListener);
+        }
+        if (recordSoundSizeListener != null || recordLevelListener != null)
+        {
+            levelMeter.process(data, 0, length, levelReport);
+        }
+        if (isLoudnessEnabled())
+        {
+            loudnessMeter.process(data, 0, length, loudnessReport);
+        }
+        if (recordWaveformListener != null)
+        {
+            waveformEnvelope.process(data, 0, length, envelopeListener);
         }
-        ave = (sum / (length - offsetStart)) * 65536 / 128f;
-        int i = (int)(Math.log10(ave) * 20);
-        return i < 0 ? 27 : i;
+    }
+    
+    private void notifyFftData(final byte[] fftData)
+    {
+        if (fftData == null)
+        {
+            return;
+        }
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if (recordFftDataListener != null)
+                {
+                    recordFftDataListener.onFftData(fftData);
+                }
+            }
+        });
     }
     
     private void initMp3EncoderThread(int bufferSize)
@@ -309,6 +816,8 @@ public class RecordHelper
         try
         {
             mp3EncodeThread = new Mp3EncodeThread(resultFile, bufferSize);
+            // 启动前设置，编码线程异常退出时也能通知到
+            mp3EncodeThread.setEncordFinishListener(mp3FinishListener);
             mp3EncodeThread.start();
         }
         catch (Exception e)
@@ -329,6 +838,8 @@ public class RecordHelper
                 currentConfig.getChannelConfig(),
                 currentConfig.getEncodingConfig()) * RECORD_AUDIO_BUFFER_TIMES;
             Logger.d(TAG, "record buffer size = %s", bufferSize);
+            stft.reset();
+            levelMeter.reset();
             audioRecord = new AudioRecord(MediaRecorder.AudioSource.MIC, currentConfig.getSampleRate(),
                 currentConfig.getChannelConfig(), currentConfig.getEncodingConfig(), bufferSize);
             if (currentConfig.getFormat() == RecordConfig.RecordFormat.MP3)
@@ -354,6 +865,9 @@ public class RecordHelper
                 case MP3:
                     startMp3Recorder();
                     break;
+                case WAV:
+                    startWavRecorder();
+                    break;
                 default:
                     startPcmRecorder();
                     break;
@@ -366,7 +880,8 @@ public class RecordHelper
             state = RecordState.RECORDING;
             notifyState();
             Logger.d(TAG, "开始录制 Pcm");
-            try (PCMGainer pcmGainer = new PCMGainer(tmpFile, mMaxGain))
+            // 登记在打开之前，重名时抛出异常而不是截断已录制的分段
+            try (FileOutputStream out = segments.open(tmpFile))
             {
                 audioRecord.startRecording();
                 byte[] byteBuffer = new byte[bufferSize];
@@ -374,20 +889,32 @@ public class RecordHelper
                 while (state == RecordState.RECORDING)
                 {
                     int end = audioRecord.read(byteBuffer, 0, byteBuffer.length);
+                    if (autoGainLimiter != null && end > 0)
+                    {
+                        autoGainLimiter.process(byteBuffer, 0, end);
+                    }
                     notifyData(byteBuffer);
-                    pcmGainer.write(byteBuffer, 0, end);
+                    analyzeData(byteBuffer, end);
+                    if (end > 0)
+                    {
+                        if (pcmGainer != null)
+                        {
+                            pcmGainer.track(byteBuffer, 0, end);
+                        }
+                        out.write(byteBuffer, 0, end);
+                    }
                 }
                 audioRecord.stop();
+                finishAnalyze();
             }
-            catch (IOException ioException)
+            catch (IOException | IllegalStateException e)
             {
-                Logger.e(ioException, TAG, ioException.getMessage());
+                Logger.e(e, TAG, e.getMessage());
                 notifyError("录音失败");
             }
             try {
                 if (state == RecordState.STOP)
                 {
-                    files.add(tmpFile);
                     makeFile();
                 }
                 else
@@ -406,6 +933,62 @@ public class RecordHelper
             }
         }
         
+        private void startWavRecorder()
+        {
+            state = RecordState.RECORDING;
+            notifyState();
+            Logger.d(TAG, "开始录制 Wav");
+            try
+            {
+                if (wavFileWriter == null)
+                {
+                    wavFileWriter = new WavFileWriter(resultFile, currentConfig.getSampleRate(),
+                        currentConfig.getChannelCount(), currentConfig.getEncoding(), pcmGainer);
+                }
+                // 本线程只使用这一个写入器，其他线程关闭时写入抛出 IOException 而不是空指针
+                WavFileWriter writer = wavFileWriter;
+                audioRecord.startRecording();
+                byte[] byteBuffer = new byte[bufferSize];
+                
+                while (state == RecordState.RECORDING)
+                {
+                    int end = audioRecord.read(byteBuffer, 0, byteBuffer.length);
+                    if (autoGainLimiter != null && end > 0)
+                    {
+                        autoGainLimiter.process(byteBuffer, 0, end);
+                    }
+                    notifyData(byteBuffer);
+                    analyzeData(byteBuffer, end);
+                    writer.write(byteBuffer, 0, end);
+                }
+                audioRecord.stop();
+                finishAnalyze();
+                // 暂停时也保证文件头正确
+                writer.updateHeader();
+            }
+            catch (IOException ioException)
+            {
+                Logger.e(ioException, TAG, ioException.getMessage());
+                notifyError("录音失败");
+                // 本次录音到此结束，不再写入该文件
+                closeWavFile();
+            }
+            if (state == RecordState.STOP)
+            {
+                makeFile();
+            }
+            else
+            {
+                Logger.i(TAG, "暂停！");
+            }
+            if (state != RecordState.PAUSE)
+            {
+                state = RecordState.IDLE;
+                notifyState();
+                Logger.d(TAG, "录音结束");
+            }
+        }
+        
         private void startMp3Recorder()
         {
             state = RecordState.RECORDING;
@@ -414,22 +997,59 @@ public class RecordHelper
             try
             {
                 audioRecord.startRecording();
-                short[] byteBuffer = new short[bufferSize];
+                // PCM 直接读入 native 内存，经编码缓冲区交给 LAME，不需要处理时不经过 Java 堆
+                ByteBuffer captureBuffer = ByteBuffer.allocateDirect(bufferSize * 2).order(ByteOrder.nativeOrder());
+                ShortBuffer captureShorts = captureBuffer.asShortBuffer();
+                short[] byteBuffer = null;
                 
                 while (state == RecordState.RECORDING)
                 {
-                    int end = audioRecord.read(byteBuffer, 0, byteBuffer.length);
-//                    for(int i=0;i<byteBuffer.length;i++)
-//                    {
-//                        byteBuffer[i]= (byte) (byteBuffer[i]*recordVolume);
-//                    }
-                    if (mp3EncodeThread != null)
+                    captureBuffer.clear();
+                    int bytes = audioRecord.read(captureBuffer, captureBuffer.capacity());
+                    if (bytes < 0)
+                    {
+                        // ERROR_INVALID_OPERATION、ERROR_DEAD_OBJECT 等错误不会自行恢复，继续读取只会空转
+                        Logger.e(TAG, "AudioRecord.read 失败：%s", bytes);
+                        notifyError("录音失败");
+                        break;
+                    }
+                    if (bytes == 0)
+                    {
+                        continue;
+                    }
+                    int end = bytes / 2;
+                    boolean useHeap = autoGainLimiter != null || isAnalyzing() || recordDataListener != null;
+                    if (useHeap)
+                    {
+                        if (byteBuffer == null)
+                        {
+                            byteBuffer = new short[bufferSize];
+                        }
+                        captureShorts.clear();
+                        captureShorts.get(byteBuffer, 0, end);
+                        if (autoGainLimiter != null)
+                        {
+                            autoGainLimiter.process(byteBuffer, 0, end);
+                            captureShorts.clear();
+                            captureShorts.put(byteBuffer, 0, end);
+                        }
+                    }
+                    captureBuffer.limit(end * 2);
+                    if (mp3EncodeThread != null && !mp3EncodeThread.offer(captureBuffer))
                     {
-                        mp3EncodeThread.addChangeBuffer(new Mp3EncodeThread.ChangeBuffer(byteBuffer, end));
+                        Logger.w(TAG, "编码缓冲区已满，丢弃数据");
+                    }
+                    if (useHeap)
+                    {
+                        analyzeData(byteBuffer, end);
+                        if (recordDataListener != null)
+                        {
+                            notifyData(ByteUtils.toBytes(byteBuffer));
+                        }
                     }
-                    notifyData(ByteUtils.toBytes(byteBuffer));
                 }
                 audioRecord.stop();
+                finishAnalyze();
             }
             catch (Exception e)
             {
@@ -440,6 +1060,7 @@ public class RecordHelper
             {
                 state = RecordState.IDLE;
                 notifyState();
+                finishLoudness();
                 stopMp3Encoded();
             }
             else
@@ -449,19 +1070,33 @@ public class RecordHelper
         }
     }
     
+    private final Mp3EncodeThread.EncordFinishListener mp3FinishListener = new Mp3EncodeThread.EncordFinishListener()
+    {
+        @Override
+        public void onFinish()
+        {
+            notifyFinish();
+            mp3EncodeThread = null;
+        }
+        
+        @Override
+        public void onError(File file)
+        {
+            mp3EncodeThread = null;
+            notifyError("编码失败");
+            // 编码器已退出，继续采集没有意义
+            if (state == RecordState.RECORDING)
+            {
+                stop();
+            }
+        }
+    };
+    
     private void stopMp3Encoded()
     {
         if (mp3EncodeThread != null)
         {
-            mp3EncodeThread.stopSafe(new Mp3EncodeThread.EncordFinishListener()
-            {
-                @Override
-                public void onFinish()
-                {
-                    notifyFinish();
-                    mp3EncodeThread = null;
-                }
-            });
+            mp3EncodeThread.stopSafe(mp3FinishListener);
         }
         else
         {
@@ -471,13 +1106,16 @@ public class RecordHelper
     
     private void makeFile()
     {
+        finishLoudness();
         switch (currentConfig.getFormat())
         {
             case MP3:
                 return;
             case WAV:
-                mergePcmFile();
-                makeWav();
+                if (!closeWavFile())
+                {
+                    notifyError("保存失败！");
+                }
                 break;
             case PCM:
                 mergePcmFile();
@@ -490,95 +1128,108 @@ public class RecordHelper
     }
     
     /**
-     * 添加Wav头文件
+     * 完成 Wav 文件：应用增益并写入最终的文件头，之后写入器置空
+     *
+     * @return 没有写入器或关闭成功时返回 true
      */
-    private void makeWav()
+    private boolean closeWavFile()
     {
-        if (!FileUtils.isFile(resultFile) || resultFile.length() == 0)
+        if (wavFileWriter == null)
         {
-            return;
+            return true;
         }
-        byte[] header = WavUtils.generateWavFileHeader((int)resultFile.length(),
-            currentConfig.getSampleRate(),
-            currentConfig.getChannelCount(),
-            currentConfig.getEncoding());
-        WavUtils.writeHeader(resultFile, header);
+        boolean closed = true;
+        try
+        {
+            wavFileWriter.close();
+        }
+        catch (IOException e)
+        {
+            Logger.e(e, TAG, e.getMessage());
+            closed = false;
+        }
+        wavFileWriter = null;
+        return closed;
     }
     
     /**
-     * 合并文件
+     * 合并文件，需要增益时合并与增益在同一遍读写中完成，两种方式都支持进度与取消
      */
     private void mergePcmFile()
     {
-        boolean mergeSuccess = mergePcmFiles(resultFile, files);
-        if (!mergeSuccess)
+        List<File> files;
+        try
+        {
+            // 暂停后直接停止时，最后一段可能还在采集线程中写入
+            files = segments.awaitFiles();
+        }
+        catch (InterruptedException e)
+        {
+            Logger.e(e, TAG, e.getMessage());
+            Thread.currentThread().interrupt();
+            notifyError("合并失败");
+            return;
+        }
+        SegmentMerger merger;
+        if (pcmGainer != null && pcmGainer.gain() > 1)
+        {
+            merger = pcmGainer.merger(files, resultFile);
+        }
+        else
+        {
+            // 第一个分段直接作为输出文件，其余分段零拷贝追加
+            merger = new FileMerger(resultFile, files);
+        }
+        if (!mergePcmFiles(merger))
         {
             notifyError("合并失败");
         }
     }
     
     /**
-     * 合并Pcm文件
+     * 在当前线程中合并，期间可通过 {@link #cancelMerge()} 取消
      *
-     * @param recordFile 输出文件
-     * @param files 多个文件源
      * @return 是否成功
      */
-    private boolean mergePcmFiles(File recordFile, List<File> files)
+    private boolean mergePcmFiles(SegmentMerger merger)
     {
-        if (recordFile == null || files == null || files.size() <= 0)
+        merger.setOnProgressListener(new SegmentMerger.OnProgressListener()
         {
-            return false;
-        }
-        
-        FileOutputStream fos = null;
-        BufferedOutputStream outputStream = null;
-        byte[] buffer = new byte[1024];
-        try
-        {
-            fos = new FileOutputStream(recordFile);
-            outputStream = new BufferedOutputStream(fos);
-            
-            for (int i = 0; i < files.size(); i++)
+            @Override
+            public void onProgress(long merged, long total)
             {
-                BufferedInputStream inputStream = new BufferedInputStream(new FileInputStream(files.get(i)));
-                int readCount;
-                while ((readCount = inputStream.read(buffer)) > 0)
-                {
-                    outputStream.write(buffer, 0, readCount);
-                }
-                inputStream.close();
+                Logger.v(TAG, "合并进度 %s/%s", merged, total);
+                notifyMergeProgress(merged, total);
             }
-        }
-        catch (Exception e)
+        });
+        segmentMerger = merger;
+        try
         {
-            Logger.e(e, TAG, e.getMessage());
-            return false;
+            return merger.merge();
         }
         finally
         {
-            try
+            segmentMerger = null;
+        }
+    }
+    
+    private void notifyMergeProgress(final long merged, final long total)
+    {
+        if (recordMergeListener == null)
+        {
+            return;
+        }
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
             {
-                if (outputStream != null)
-                {
-                    outputStream.close();
-                }
-                if (fos != null)
+                if (recordMergeListener != null)
                 {
-                    fos.close();
+                    recordMergeListener.onMergeProgress(merged, total);
                 }
             }
-            catch (IOException e)
-            {
-                e.printStackTrace();
-            }
-        }
-        for (int i = 0; i < files.size(); i++)
-        {
-            files.get(i).delete();
-        }
-        files.clear();
-        return true;
+        });
     }
 
     public boolean setTmpFilesDir(Path tmpFilesDir)
@@ -622,10 +1273,13 @@ public class RecordHelper
         return Paths.get(fileDir);
     }
 
+    /**
+     * 分段文件名前缀，只精确到秒，由 {@link PcmSegments#newFile} 追加序号
+     */
     private String newTmpFileName()
     {
         return String.format(Locale.getDefault(),
-                "record_tmp_%s.pcm",
+                "record_tmp_%s",
                 FileUtils.getNowString(new SimpleDateFormat("yyyyMMdd_HH_mm_ss", Locale.SIMPLIFIED_CHINESE)));
     }
     /**
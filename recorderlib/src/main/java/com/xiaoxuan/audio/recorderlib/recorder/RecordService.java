@@ -9,10 +9,16 @@ import android.os.IBinder;
 import androidx.annotation.NonNull;
 
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftBufferListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordFftDataListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLevelListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordLoudnessListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordMergeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordResultListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordSoundSizeListener;
 import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordStateListener;
+import com.xiaoxuan.audio.recorderlib.recorder.listener.RecordWaveformListener;
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LoudnessResult;
 import com.xiaoxuan.audio.recorderlib.utils.FileUtils;
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
@@ -193,6 +199,41 @@ public class RecordService extends Service
         RecordHelper.getInstance().setRecordFftDataListener(recordFftDataListener);
     }
     
+    public static void setRecordFftBufferListener(RecordFftBufferListener recordFftBufferListener)
+    {
+        RecordHelper.getInstance().setRecordFftBufferListener(recordFftBufferListener);
+    }
+    
+    public static void setRecordLevelListener(RecordLevelListener recordLevelListener)
+    {
+        RecordHelper.getInstance().setRecordLevelListener(recordLevelListener);
+    }
+    
+    public static void setRecordLoudnessListener(RecordLoudnessListener recordLoudnessListener)
+    {
+        RecordHelper.getInstance().setRecordLoudnessListener(recordLoudnessListener);
+    }
+    
+    public static void setRecordWaveformListener(RecordWaveformListener recordWaveformListener)
+    {
+        RecordHelper.getInstance().setRecordWaveformListener(recordWaveformListener);
+    }
+    
+    public static void setRecordMergeListener(RecordMergeListener recordMergeListener)
+    {
+        RecordHelper.getInstance().setRecordMergeListener(recordMergeListener);
+    }
+    
+    public static void cancelMerge()
+    {
+        RecordHelper.getInstance().cancelMerge();
+    }
+    
+    public static LoudnessResult getLoudnessResult()
+    {
+        return RecordHelper.getInstance().getLoudnessResult();
+    }
+    
     private void doStartRecording(String path)
     {
         Logger.v(TAG, "doStartRecording path: %s", path);
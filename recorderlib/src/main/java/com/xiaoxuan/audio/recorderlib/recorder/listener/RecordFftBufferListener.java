@@ -0,0 +1,16 @@
+package com.xiaoxuan.audio.recorderlib.recorder.listener;
+
+/**
+ * 录音可视化数据回调（复用数组版本）
+ */
+public interface RecordFftBufferListener
+{
+    
+    /**
+     * @param data 傅里叶转换后的数据，取值见 {@link com.xiaoxuan.audio.recorderlib.recorder.RecordConfig#setFftDbScale}；
+     *            数组来自缓存池，回调返回后会被复用，不可持有
+     * @param length 有效数据个数
+     */
+    void onFftData(float[] data, int length);
+    
+}
@@ -0,0 +1,14 @@
+package com.xiaoxuan.audio.recorderlib.recorder.listener;
+
+public interface RecordLevelListener
+{
+    
+    /**
+     * 实时返回电平，按 {@link com.xiaoxuan.audio.recorderlib.recorder.RecordConfig#setLevelIntegrationMs} 的间隔回调
+     *
+     * @param rmsDb RMS 电平，单位 dBFS（满幅为 0dB）
+     * @param peakDb 峰值电平（含峰值保持），单位 dBFS
+     */
+    void onLevel(float rmsDb, float peakDb);
+    
+}
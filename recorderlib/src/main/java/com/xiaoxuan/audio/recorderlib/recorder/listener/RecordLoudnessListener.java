@@ -0,0 +1,28 @@
+package com.xiaoxuan.audio.recorderlib.recorder.listener;
+
+import com.xiaoxuan.audio.recorderlib.recorder.meter.LoudnessResult;
+
+/**
+ * EBU R128 响度回调
+ */
+public interface RecordLoudnessListener
+{
+    
+    /**
+     * 录音过程中实时返回响度，约每 100ms 一次
+     *
+     * @param momentary 瞬时响度 LUFS
+     * @param shortTerm 短期响度 LUFS
+     * @param integrated 整体响度 LUFS
+     * @param truePeak 真峰值 dBTP
+     */
+    void onLoudness(float momentary, float shortTerm, float integrated, float truePeak);
+    
+    /**
+     * 录音结束时返回整段录音的最终结果
+     *
+     * @param result 响度结果
+     */
+    void onLoudnessResult(LoudnessResult result);
+    
+}
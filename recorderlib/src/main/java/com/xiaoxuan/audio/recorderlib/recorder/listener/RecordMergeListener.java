@@ -0,0 +1,15 @@
+package com.xiaoxuan.audio.recorderlib.recorder.listener;
+
+/**
+ * PCM 分段合并进度回调，在主线程中回调
+ */
+public interface RecordMergeListener
+{
+    
+    /**
+     * @param merged 已合并字节数
+     * @param total 总字节数
+     */
+    void onMergeProgress(long merged, long total);
+    
+}
@@ -6,7 +6,7 @@ public interface RecordSoundSizeListener
     /**
      * 实时返回音量大小
      *
-     * @param soundSize 当前音量大小
+     * @param soundSize 当前音量大小，即高于 16bit 本底噪声的分贝数（RMS dBFS + 96），范围 0~96
      */
     void onSoundSize(int soundSize);
     
@@ -0,0 +1,15 @@
+package com.xiaoxuan.audio.recorderlib.recorder.listener;
+
+/**
+ * 实时波形包络回调
+ */
+public interface RecordWaveformListener
+{
+    
+    /**
+     * @param data 依次为每个点的 最小值、最大值、RMS，归一化到 -1~1；数组来自缓存池，回调返回后会被复用，不可持有
+     * @param points 点数，有效数据个数为 points * 3
+     */
+    void onWaveform(float[] data, int points);
+    
+}
@@ -0,0 +1,173 @@
+package com.xiaoxuan.audio.recorderlib.recorder.meter;
+
+/**
+ * 时域电平表：按积分时间统计 RMS 与峰值，单位 dBFS（满幅为 0dB）
+ * <p>
+ * 逐采样累加，不做 FFT，也不分配内存；非线程安全，应只在采集线程中使用。
+ */
+public class LevelMeter
+{
+    /**
+     * 输出下限，静音时返回该值
+     */
+    public static final float MIN_DB = -96f;
+
+    private static final double FULL_SCALE = 32768.0;
+
+    private final int bitsPerSample;
+
+    /**
+     * 每个积分窗口包含的采样数（所有声道合计）
+     */
+    private final int windowSamples;
+
+    private final int holdSamples;
+
+    private double sumSquares;
+
+    private int windowPeak;
+
+    private int count;
+
+    private int heldPeak;
+
+    private int heldElapsed;
+
+    private float rmsDb = MIN_DB;
+
+    private float peakDb = MIN_DB;
+
+    /**
+     * @param sampleRate 采样率
+     * @param channels 声道数
+     * @param bitsPerSample 位宽 8 或 16
+     * @param integrationMs 积分时间，每个积分窗口回调一次
+     * @param peakHoldMs 峰值保持时间，期间只会被更大的峰值替换
+     */
+    public LevelMeter(int sampleRate, int channels, int bitsPerSample, int integrationMs, int peakHoldMs)
+    {
+        this.bitsPerSample = bitsPerSample;
+        this.windowSamples = Math.max(1, (int)((long)sampleRate * Math.max(1, channels) * integrationMs / 1000));
+        this.holdSamples = (int)((long)sampleRate * Math.max(1, channels) * peakHoldMs / 1000);
+    }
+
+    /**
+     * 处理 16bit 采样
+     */
+    public void process(short[] samples, int offset, int length, OnLevelListener listener)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            accumulate(samples[i], listener);
+        }
+    }
+
+    /**
+     * 处理 PCM 字节数据，16bit 为小端有符号，8bit 为无符号
+     */
+    public void process(byte[] pcm, int offset, int length, OnLevelListener listener)
+    {
+        int end = offset + length;
+        if (bitsPerSample == 8)
+        {
+            for (int i = offset; i < end; i++)
+            {
+                accumulate(((pcm[i] & 0xff) - 128) << 8, listener);
+            }
+        }
+        else
+        {
+            end -= length & 1;
+            for (int i = offset; i < end; i += 2)
+            {
+                accumulate((short)((pcm[i] & 0xff) | ((pcm[i + 1] & 0xff) << 8)), listener);
+            }
+        }
+    }
+
+    private void accumulate(int sample, OnLevelListener listener)
+    {
+        sumSquares += (double)sample * sample;
+        int abs = sample < 0 ? -sample : sample;
+        if (abs > windowPeak)
+        {
+            windowPeak = abs;
+        }
+        if (++count >= windowSamples)
+        {
+            finishWindow(listener);
+        }
+    }
+
+    private void finishWindow(OnLevelListener listener)
+    {
+        double rms = Math.sqrt(sumSquares / count);
+        heldElapsed += count;
+        if (windowPeak >= heldPeak || heldElapsed >= holdSamples)
+        {
+            heldPeak = windowPeak;
+            heldElapsed = 0;
+        }
+        rmsDb = toDb(rms);
+        peakDb = toDb(heldPeak);
+        sumSquares = 0;
+        windowPeak = 0;
+        count = 0;
+        if (listener != null)
+        {
+            listener.onLevel(rmsDb, peakDb);
+        }
+    }
+
+    private static float toDb(double amplitude)
+    {
+        if (amplitude <= 0)
+        {
+            return MIN_DB;
+        }
+        double db = 20 * Math.log10(amplitude / FULL_SCALE);
+        return db < MIN_DB ? MIN_DB : (float)db;
+    }
+
+    /**
+     * 清空统计，如暂停后恢复时调用
+     */
+    public void reset()
+    {
+        sumSquares = 0;
+        windowPeak = 0;
+        count = 0;
+        heldPeak = 0;
+        heldElapsed = 0;
+        rmsDb = MIN_DB;
+        peakDb = MIN_DB;
+    }
+
+    /**
+     * 最近一个积分窗口的 RMS 电平 dBFS
+     */
+    public float getRmsDb()
+    {
+        return rmsDb;
+    }
+
+    /**
+     * 当前保持的峰值电平 dBFS
+     */
+    public float getPeakDb()
+    {
+        return peakDb;
+    }
+
+    public interface OnLevelListener
+    {
+        /**
+         * 每个积分窗口结束时在采集线程中回调
+         *
+         * @param rmsDb RMS 电平 dBFS
+         * @param peakDb 保持的峰值电平 dBFS
+         */
+        void onLevel(float rmsDb, float peakDb);
+    }
+}
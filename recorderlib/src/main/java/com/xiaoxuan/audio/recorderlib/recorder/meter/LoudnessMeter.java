@@ -0,0 +1,398 @@
+package com.xiaoxuan.audio.recorderlib.recorder.meter;
+
+/**
+ * EBU R128 / ITU-R BS.1770 响度表：瞬时响度（400ms）、短期响度（3s）、整体响度（门限积分）与真峰值
+ * <p>
+ * 采样先经过 K 计权（高架 + 高通两级双二阶滤波），每 100ms 得到一个子块能量；
+ * 瞬时/短期响度取最近 4/30 个子块，整体响度使用 75% 重叠的 400ms 门限块，
+ * 块能量记录在按 0.1LU 分档的直方图中，内存占用与录音时长无关。
+ * 真峰值通过 4 倍过采样的多相 FIR 插值得到。
+ * <p>
+ * 非线程安全，应只在采集线程中使用。
+ */
+public class LoudnessMeter
+{
+    /**
+     * 输出下限，没有足够数据时返回该值
+     */
+    public static final float MIN_LUFS = -70f;
+
+    private static final double FULL_SCALE = 32768.0;
+
+    private static final int MOMENTARY_BLOCKS = 4;
+
+    private static final int SHORT_TERM_BLOCKS = 30;
+
+    private static final double ABSOLUTE_GATE = -70;
+
+    private static final double RELATIVE_GATE = -10;
+
+    /**
+     * 直方图：-70 ~ +10 LUFS，每档 0.1LU
+     */
+    private static final double HISTOGRAM_MIN = -70;
+
+    private static final int HISTOGRAM_BINS = 800;
+
+    private static final int OVERSAMPLE = 4;
+
+    private static final int TAPS_PER_PHASE = 12;
+
+    /**
+     * 多相插值滤波器系数 [phase][tap]
+     */
+    private static final double[][] INTERPOLATION = createInterpolationFilter();
+
+    private final int channels;
+
+    private final int bitsPerSample;
+
+    private final int subBlockFrames;
+
+    /**
+     * K 计权滤波器系数：stage1 高架，stage2 高通
+     */
+    private final double s1b0, s1b1, s1b2, s1a1, s1a2;
+
+    private final double s2b0, s2b1, s2b2, s2a1, s2a2;
+
+    /**
+     * 每声道的滤波器状态 (Direct Form II transposed)，[channel * 4 + i]
+     */
+    private final double[] filterState;
+
+    /**
+     * 每声道最近 TAPS_PER_PHASE 个采样，用于真峰值插值
+     */
+    private final double[] history;
+
+    private int historyPos;
+
+    /**
+     * 当前交错帧中的声道下标
+     */
+    private int channel;
+
+    private double subBlockSum;
+
+    private int subBlockCount;
+
+    /**
+     * 最近 SHORT_TERM_BLOCKS 个子块的能量
+     */
+    private final double[] subBlocks = new double[SHORT_TERM_BLOCKS];
+
+    private int subBlockPos;
+
+    private long subBlockTotal;
+
+    private final long[] histogramCount = new long[HISTOGRAM_BINS];
+
+    private final double[] histogramEnergy = new double[HISTOGRAM_BINS];
+
+    private double truePeak;
+
+    private float momentary = MIN_LUFS;
+
+    private float shortTerm = MIN_LUFS;
+
+    private float integrated = MIN_LUFS;
+
+    /**
+     * @param sampleRate 采样率
+     * @param channels 声道数，各声道权重均为 1.0（L/R/C）
+     * @param bitsPerSample 位宽 8 或 16
+     */
+    public LoudnessMeter(int sampleRate, int channels, int bitsPerSample)
+    {
+        this.channels = Math.max(1, channels);
+        this.bitsPerSample = bitsPerSample;
+        this.subBlockFrames = sampleRate / 10;
+        this.filterState = new double[this.channels * 4];
+        this.history = new double[this.channels * TAPS_PER_PHASE];
+
+        // stage 1: 高架滤波，模拟头部的声学效应
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / sampleRate);
+        double vh = Math.pow(10.0, gain / 20.0);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1.0 + k / q + k * k;
+        s1b0 = (vh + vb * k / q + k * k) / a0;
+        s1b1 = 2.0 * (k * k - vh) / a0;
+        s1b2 = (vh - vb * k / q + k * k) / a0;
+        s1a1 = 2.0 * (k * k - 1.0) / a0;
+        s1a2 = (1.0 - k / q + k * k) / a0;
+
+        // stage 2: RLB 高通滤波
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / sampleRate);
+        a0 = 1.0 + k / q + k * k;
+        s2b0 = 1.0;
+        s2b1 = -2.0;
+        s2b2 = 1.0;
+        s2a1 = 2.0 * (k * k - 1.0) / a0;
+        s2a2 = (1.0 - k / q + k * k) / a0;
+    }
+
+    private static double[][] createInterpolationFilter()
+    {
+        int taps = OVERSAMPLE * TAPS_PER_PHASE;
+        double[][] filter = new double[OVERSAMPLE][TAPS_PER_PHASE];
+        double center = (taps - 1) / 2.0;
+        for (int n = 0; n < taps; n++)
+        {
+            double x = (n - center) / OVERSAMPLE;
+            double sinc = x == 0 ? 1 : Math.sin(Math.PI * x) / (Math.PI * x);
+            double window = 0.5 - 0.5 * Math.cos(2 * Math.PI * (n + 0.5) / taps);
+            filter[n % OVERSAMPLE][n / OVERSAMPLE] = sinc * window;
+        }
+        for (double[] phase : filter)
+        {
+            double sum = 0;
+            for (double c : phase)
+            {
+                sum += c;
+            }
+            for (int i = 0; i < phase.length; i++)
+            {
+                phase[i] /= sum;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * 处理交错排列的 16bit 采样
+     *
+     * @param listener 每 100ms 回调一次，可为 null
+     */
+    public void process(short[] samples, int offset, int length, OnLoudnessListener listener)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            accumulate(samples[i] / FULL_SCALE, listener);
+        }
+    }
+
+    /**
+     * 处理 PCM 字节数据，16bit 为小端有符号，8bit 为无符号
+     */
+    public void process(byte[] pcm, int offset, int length, OnLoudnessListener listener)
+    {
+        int end = offset + length;
+        if (bitsPerSample == 8)
+        {
+            for (int i = offset; i < end; i++)
+            {
+                accumulate(((pcm[i] & 0xff) - 128) / 128.0, listener);
+            }
+        }
+        else
+        {
+            end -= length & 1;
+            for (int i = offset; i < end; i += 2)
+            {
+                accumulate((short)((pcm[i] & 0xff) | ((pcm[i + 1] & 0xff) << 8)) / FULL_SCALE, listener);
+            }
+        }
+    }
+
+    private void accumulate(double x, OnLoudnessListener listener)
+    {
+        updateTruePeak(x);
+
+        int s = channel * 4;
+        double y1 = s1b0 * x + filterState[s];
+        filterState[s] = s1b1 * x - s1a1 * y1 + filterState[s + 1];
+        filterState[s + 1] = s1b2 * x - s1a2 * y1;
+        double y2 = s2b0 * y1 + filterState[s + 2];
+        filterState[s + 2] = s2b1 * y1 - s2a1 * y2 + filterState[s + 3];
+        filterState[s + 3] = s2b2 * y1 - s2a2 * y2;
+        subBlockSum += y2 * y2;
+
+        if (++channel == channels)
+        {
+            channel = 0;
+            historyPos = (historyPos + 1) % TAPS_PER_PHASE;
+            if (++subBlockCount >= subBlockFrames)
+            {
+                finishSubBlock(listener);
+            }
+        }
+    }
+
+    private void updateTruePeak(double x)
+    {
+        int base = channel * TAPS_PER_PHASE;
+        history[base + historyPos] = x;
+        for (int p = 0; p < OVERSAMPLE; p++)
+        {
+            double[] phase = INTERPOLATION[p];
+            double y = 0;
+            // 最新的采样对应最后一个抽头
+            for (int t = 0, h = historyPos + 1; t < TAPS_PER_PHASE; t++, h++)
+            {
+                if (h == TAPS_PER_PHASE)
+                {
+                    h = 0;
+                }
+                y += phase[t] * history[base + h];
+            }
+            double abs = y < 0 ? -y : y;
+            if (abs > truePeak)
+            {
+                truePeak = abs;
+            }
+        }
+        double abs = x < 0 ? -x : x;
+        if (abs > truePeak)
+        {
+            truePeak = abs;
+        }
+    }
+
+    private void finishSubBlock(OnLoudnessListener listener)
+    {
+        subBlocks[subBlockPos] = subBlockSum / subBlockCount;
+        subBlockPos = (subBlockPos + 1) % SHORT_TERM_BLOCKS;
+        subBlockTotal++;
+        subBlockSum = 0;
+        subBlockCount = 0;
+
+        if (subBlockTotal >= MOMENTARY_BLOCKS)
+        {
+            double energy = averageEnergy(MOMENTARY_BLOCKS);
+            momentary = toLufs(energy);
+            addGatingBlock(energy);
+            integrated = computeIntegrated();
+        }
+        if (subBlockTotal >= SHORT_TERM_BLOCKS)
+        {
+            shortTerm = toLufs(averageEnergy(SHORT_TERM_BLOCKS));
+        }
+        if (listener != null)
+        {
+            listener.onLoudness(momentary, shortTerm, integrated, getTruePeak());
+        }
+    }
+
+    private double averageEnergy(int blocks)
+    {
+        double sum = 0;
+        for (int i = 1; i <= blocks; i++)
+        {
+            sum += subBlocks[(subBlockPos - i + SHORT_TERM_BLOCKS) % SHORT_TERM_BLOCKS];
+        }
+        return sum / blocks;
+    }
+
+    private void addGatingBlock(double energy)
+    {
+        double lufs = -0.691 + 10 * Math.log10(energy);
+        if (Double.isNaN(lufs) || lufs < ABSOLUTE_GATE)
+        {
+            return;
+        }
+        int bin = (int)((lufs - HISTOGRAM_MIN) * 10);
+        bin = Math.max(0, Math.min(bin, HISTOGRAM_BINS - 1));
+        histogramCount[bin]++;
+        histogramEnergy[bin] += energy;
+    }
+
+    private float computeIntegrated()
+    {
+        long count = 0;
+        double energy = 0;
+        for (int i = 0; i < HISTOGRAM_BINS; i++)
+        {
+            count += histogramCount[i];
+            energy += histogramEnergy[i];
+        }
+        if (count == 0)
+        {
+            return MIN_LUFS;
+        }
+        double relativeGate = -0.691 + 10 * Math.log10(energy / count) + RELATIVE_GATE;
+        int start = (int)Math.ceil((relativeGate - HISTOGRAM_MIN) * 10);
+        start = Math.max(0, Math.min(start, HISTOGRAM_BINS - 1));
+        count = 0;
+        energy = 0;
+        for (int i = start; i < HISTOGRAM_BINS; i++)
+        {
+            count += histogramCount[i];
+            energy += histogramEnergy[i];
+        }
+        return count == 0 ? MIN_LUFS : toLufs(energy / count);
+    }
+
+    private static float toLufs(double energy)
+    {
+        if (energy <= 0)
+        {
+            return MIN_LUFS;
+        }
+        double lufs = -0.691 + 10 * Math.log10(energy);
+        return lufs < MIN_LUFS ? MIN_LUFS : (float)lufs;
+    }
+
+    /**
+     * 瞬时响度 LUFS（400ms）
+     */
+    public float getMomentary()
+    {
+        return momentary;
+    }
+
+    /**
+     * 短期响度 LUFS（3s）
+     */
+    public float getShortTerm()
+    {
+        return shortTerm;
+    }
+
+    /**
+     * 整体响度 LUFS，自开始以来经绝对门限（-70LUFS）与相对门限（-10LU）积分
+     */
+    public float getIntegrated()
+    {
+        return integrated;
+    }
+
+    /**
+     * 真峰值 dBTP
+     */
+    public float getTruePeak()
+    {
+        if (truePeak <= 0)
+        {
+            return Float.NEGATIVE_INFINITY;
+        }
+        return (float)(20 * Math.log10(truePeak));
+    }
+
+    /**
+     * 当前结果的快照
+     */
+    public LoudnessResult getResult()
+    {
+        return new LoudnessResult(momentary, shortTerm, integrated, getTruePeak());
+    }
+
+    public interface OnLoudnessListener
+    {
+        /**
+         * 每 100ms 在采集线程中回调
+         *
+         * @param momentary 瞬时响度 LUFS
+         * @param shortTerm 短期响度 LUFS
+         * @param integrated 整体响度 LUFS
+         * @param truePeak 真峰值 dBTP
+         */
+        void onLoudness(float momentary, float shortTerm, float integrated, float truePeak);
+    }
+}
@@ -0,0 +1,69 @@
+package com.xiaoxuan.audio.recorderlib.recorder.meter;
+
+import java.io.Serializable;
+import java.util.Locale;
+
+/**
+ * 响度测量结果
+ */
+public class LoudnessResult implements Serializable
+{
+    /**
+     * 瞬时响度 LUFS
+     */
+    private final float momentary;
+    
+    /**
+     * 短期响度 LUFS
+     */
+    private final float shortTerm;
+    
+    /**
+     * 整体响度 LUFS
+     */
+    private final float integrated;
+    
+    /**
+     * 真峰值 dBTP
+     */
+    private final float truePeak;
+    
+    public LoudnessResult(float momentary, float shortTerm, float integrated, float truePeak)
+    {
+        this.momentary = momentary;
+        this.shortTerm = shortTerm;
+        this.integrated = integrated;
+        this.truePeak = truePeak;
+    }
+    
+    public float getMomentary()
+    {
+        return momentary;
+    }
+    
+    public float getShortTerm()
+    {
+        return shortTerm;
+    }
+    
+    public float getIntegrated()
+    {
+        return integrated;
+    }
+    
+    public float getTruePeak()
+    {
+        return truePeak;
+    }
+    
+    @Override
+    public String toString()
+    {
+        return String.format(Locale.getDefault(),
+            "M: %.1f LUFS, S: %.1f LUFS, I: %.1f LUFS, TP: %.1f dBTP",
+            momentary,
+            shortTerm,
+            integrated,
+            truePeak);
+    }
+}
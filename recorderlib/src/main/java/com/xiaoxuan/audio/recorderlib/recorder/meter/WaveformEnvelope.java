@@ -0,0 +1,179 @@
+package com.xiaoxuan.audio.recorderlib.recorder.meter;
+
+/**
+ * 波形包络：每 N 个采样统计一组 最小值/最大值/RMS，攒够一批后回调，供界面直接绘制
+ * <p>
+ * N = sampleRate / pixelsPerSecond，即每个像素对应的采样数；多声道时先取平均混为单声道。
+ * 输出值归一化到 -1~1。非线程安全，应只在采集线程中使用。
+ */
+public class WaveformEnvelope
+{
+    /**
+     * 每个点占用的 float 个数：min, max, rms
+     */
+    public static final int VALUES_PER_POINT = 3;
+
+    private static final float FULL_SCALE = 32768f;
+
+    private final int channels;
+
+    private final int bitsPerSample;
+
+    private final int samplesPerPoint;
+
+    private final int pointsPerBatch;
+
+    private final float[] batch;
+
+    private int points;
+
+    private int channel;
+
+    private int frameSum;
+
+    private int count;
+
+    private float min;
+
+    private float max;
+
+    private double sumSquares;
+
+    /**
+     * @param sampleRate 采样率
+     * @param channels 声道数
+     * @param bitsPerSample 位宽 8 或 16
+     * @param pixelsPerSecond 每秒输出的点数
+     * @param batchMs 回调间隔 ms，通常与界面刷新率一致
+     */
+    public WaveformEnvelope(int sampleRate, int channels, int bitsPerSample, int pixelsPerSecond, int batchMs)
+    {
+        this.channels = Math.max(1, channels);
+        this.bitsPerSample = bitsPerSample;
+        this.samplesPerPoint = Math.max(1, sampleRate / Math.max(1, pixelsPerSecond));
+        this.pointsPerBatch = Math.max(1, pixelsPerSecond * batchMs / 1000);
+        this.batch = new float[pointsPerBatch * VALUES_PER_POINT];
+        resetPoint();
+    }
+
+    /**
+     * 每批最多包含的点数
+     */
+    public int getPointsPerBatch()
+    {
+        return pointsPerBatch;
+    }
+
+    /**
+     * 处理交错排列的 16bit 采样
+     */
+    public void process(short[] samples, int offset, int length, OnEnvelopeListener listener)
+    {
+        int end = offset + length;
+        for (int i = offset; i < end; i++)
+        {
+            accumulate(samples[i], listener);
+        }
+    }
+
+    /**
+     * 处理 PCM 字节数据，16bit 为小端有符号，8bit 为无符号
+     */
+    public void process(byte[] pcm, int offset, int length, OnEnvelopeListener listener)
+    {
+        int end = offset + length;
+        if (bitsPerSample == 8)
+        {
+            for (int i = offset; i < end; i++)
+            {
+                accumulate(((pcm[i] & 0xff) - 128) << 8, listener);
+            }
+        }
+        else
+        {
+            end -= length & 1;
+            for (int i = offset; i < end; i += 2)
+            {
+                accumulate((short)((pcm[i] & 0xff) | ((pcm[i + 1] & 0xff) << 8)), listener);
+            }
+        }
+    }
+
+    private void accumulate(int sample, OnEnvelopeListener listener)
+    {
+        frameSum += sample;
+        if (++channel < channels)
+        {
+            return;
+        }
+        float value = frameSum / (channels * FULL_SCALE);
+        channel = 0;
+        frameSum = 0;
+
+        if (value < min)
+        {
+            min = value;
+        }
+        if (value > max)
+        {
+            max = value;
+        }
+        sumSquares += value * value;
+        if (++count < samplesPerPoint)
+        {
+            return;
+        }
+
+        int p = points * VALUES_PER_POINT;
+        batch[p] = min;
+        batch[p + 1] = max;
+        batch[p + 2] = (float)Math.sqrt(sumSquares / count);
+        resetPoint();
+        if (++points == pointsPerBatch)
+        {
+            flush(listener);
+        }
+    }
+
+    /**
+     * 立即回调已攒下的点，如暂停或停止时调用
+     */
+    public void flush(OnEnvelopeListener listener)
+    {
+        if (points > 0 && listener != null)
+        {
+            listener.onEnvelope(batch, points);
+        }
+        points = 0;
+    }
+
+    private void resetPoint()
+    {
+        count = 0;
+        min = Float.MAX_VALUE;
+        max = -Float.MAX_VALUE;
+        sumSquares = 0;
+    }
+
+    /**
+     * 丢弃未输出的数据
+     */
+    public void reset()
+    {
+        points = 0;
+        channel = 0;
+        frameSum = 0;
+        resetPoint();
+    }
+
+    public interface OnEnvelopeListener
+    {
+        /**
+         * 在采集线程中回调
+         *
+         * @param data 依次为每个点的 min, max, rms；数组会被复用，回调返回后不可持有
+         * @param points 点数
+         */
+        void onEnvelope(float[] data, int points);
+    }
+}
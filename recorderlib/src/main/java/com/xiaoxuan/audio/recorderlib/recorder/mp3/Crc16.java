@@ -0,0 +1,119 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LAME 标签使用的 CRC-16（多项式 0x8005，反射，初值 0），支持合并分段计算的结果
+ */
+final class Crc16
+{
+    private static final int POLY = 0xA001;
+
+    private static final int[] TABLE = new int[256];
+
+    static
+    {
+        for (int i = 0; i < 256; i++)
+        {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++)
+            {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLY : crc >>> 1;
+            }
+            TABLE[i] = crc;
+        }
+    }
+
+    private Crc16()
+    {
+    }
+
+    static int update(int crc, byte[] data, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * 按绝对位置读取 buffer，不改变 position
+     */
+    static int update(int crc, ByteBuffer data, int offset, int length)
+    {
+        for (int i = offset; i < offset + length; i++)
+        {
+            crc = (crc >>> 8) ^ TABLE[(crc ^ data.get(i)) & 0xFF];
+        }
+        return crc;
+    }
+
+    /**
+     * 由 A、B 两段各自的 CRC 得到 A+B 的 CRC，做法同 zlib 的 crc32_combine
+     *
+     * @param length2 B 段的字节数
+     */
+    static int combine(int crc1, int crc2, long length2)
+    {
+        if (length2 <= 0)
+        {
+            return crc1;
+        }
+        int[] even = new int[16];
+        int[] odd = new int[16];
+        // 一个 0 比特对应的矩阵
+        odd[0] = POLY;
+        int row = 1;
+        for (int n = 1; n < 16; n++)
+        {
+            odd[n] = row;
+            row <<= 1;
+        }
+        // 2 个、4 个 0 比特
+        square(even, odd);
+        square(odd, even);
+        do
+        {
+            square(even, odd);
+            if ((length2 & 1) != 0)
+            {
+                crc1 = times(even, crc1);
+            }
+            length2 >>= 1;
+            if (length2 == 0)
+            {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0)
+            {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>= 1;
+        }
+        while (length2 != 0);
+        return crc1 ^ crc2;
+    }
+
+    private static int times(int[] matrix, int vector)
+    {
+        int sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1)
+        {
+            if ((vector & 1) != 0)
+            {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(int[] square, int[] matrix)
+    {
+        for (int n = 0; n < 16; n++)
+        {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
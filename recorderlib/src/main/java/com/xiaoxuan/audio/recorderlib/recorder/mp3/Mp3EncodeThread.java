@@ -5,26 +5,65 @@ import com.xiaoxuan.audio.recorderlib.recorder.RecordService;
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 public class Mp3EncodeThread extends Thread
 {
     private static final String TAG = Mp3EncodeThread.class.getSimpleName();
     
-    private List<ChangeBuffer> cacheBufferList = Collections.synchronizedList(new LinkedList<ChangeBuffer>());
+    /**
+     * 未取到一批数据时的最长等待时间 ms
+     */
+    private static final long WAIT_TIMEOUT_MS = 100;
+    
+    /**
+     * BLOCK 策略下每次等待空间的时间 ms
+     */
+    private static final long BLOCK_WAIT_MS = 2;
+    
+    private final PcmRingBuffer ringBuffer;
+    
+    private final RecordConfig.BacklogPolicy backlogPolicy;
+    
+    /**
+     * SPILL 策略下的溢出日志，缓冲区满后的数据按顺序写入，编码线程读回
+     */
+    private final SpillJournal spillJournal;
+    
+    /**
+     * 编码线程读回溢出数据使用的缓冲区
+     */
+    private final ByteBuffer spillBuffer;
+    
+    /**
+     * 是否正在写入溢出日志，只由采集线程修改；日志读完前新数据也必须写入日志以保证顺序
+     */
+    private boolean spilling;
+    
+    private volatile long blockedCount;
     
     private File file;
     
     private FileOutputStream os;
     
-    private byte[] mp3Buffer;
+    /**
+     * 输出文件的通道，编码结果从 direct 缓冲区直接写入
+     */
+    private FileChannel channel;
+    
+    private final ByteBuffer mp3Buffer;
+    
+    private final Mp3Encoder encoder;
+    
+    private final int channels;
     
-    private EncordFinishListener encordFinishListener;
+    private volatile EncordFinishListener encordFinishListener;
     
     /**
      * 是否已停止录音
@@ -32,24 +71,57 @@ public class Mp3EncodeThread extends Thread
     private volatile boolean isOver = false;
     
     /**
-     * 是否继续轮询数据队列
+     * 是否继续轮询数据队列，编码线程退出时置为 false
      */
     private volatile boolean start = true;
     
+    /**
+     * 编码线程是否已正常结束并写完文件
+     */
+    private volatile boolean finished;
+    
+    /**
+     * 编码线程是否因异常退出，之后不再接收数据
+     */
+    private volatile boolean failed;
+    
+    /**
+     * SPILL 策略下本次溢出期间是否已记录过写入失败
+     */
+    private boolean spillFailed;
+    
     public Mp3EncodeThread(File file, int bufferSize)
     {
         this.file = file;
-        mp3Buffer = new byte[(int)(7200 + (bufferSize * 2 * 1.25))];
         RecordConfig currentConfig = RecordService.getCurrentConfig();
+        channels = currentConfig.getChannelCount();
+        // 分块大小取声道数的整数倍，保证交错的双声道数据不会在分块间错位
+        bufferSize -= bufferSize % channels;
+        // 多个分块一次唤醒处理，输出缓冲区按单个分块计算即可
+        ringBuffer =
+            new PcmRingBuffer(currentConfig.getMp3BufferCapacity(), bufferSize, currentConfig.getMp3WakeupBatch());
+        backlogPolicy = currentConfig.getBacklogPolicy();
+        if (backlogPolicy == RecordConfig.BacklogPolicy.SPILL)
+        {
+            spillJournal = new SpillJournal(new File(file.getPath() + ".spill"));
+            spillBuffer = ByteBuffer.allocateDirect(bufferSize * 2).order(ByteOrder.nativeOrder());
+        }
+        else
+        {
+            spillJournal = null;
+            spillBuffer = null;
+        }
+        mp3Buffer = ByteBuffer.allocateDirect((int)(7200 + (bufferSize * 2 * 1.25)));
         int sampleRate = currentConfig.getSampleRate();
         
         Logger.w(TAG,
-            "in_sampleRate:%s，getChannelCount:%s ，out_sampleRate：%s 位宽： %s,",
+            "in_sampleRate:%s，getChannelCount:%s ，out_sampleRate：%s 码率模式： %s, 码率： %s kbps",
             sampleRate,
-            currentConfig.getChannelCount(),
+            channels,
             sampleRate,
-            currentConfig.getRealEncoding());
-        Mp3Encoder.init(sampleRate, currentConfig.getChannelCount(), sampleRate, currentConfig.getRealEncoding());
+            currentConfig.getMp3BitrateMode(),
+            currentConfig.getMp3Bitrate());
+        encoder = new Mp3Encoder(sampleRate, channels, currentConfig.getMp3Options());
     }
     
     @Override
@@ -58,141 +130,327 @@ public class Mp3EncodeThread extends Thread
         try
         {
             this.os = new FileOutputStream(file);
+            this.channel = os.getChannel();
+            
+            while (start)
+            {
+                ByteBuffer next;
+                int count = 0;
+                while ((next = ringBuffer.peek()) != null)
+                {
+                    lameData(next, ringBuffer.peekLength());
+                    ringBuffer.release();
+                    count++;
+                }
+                if (count > 0)
+                {
+                    Logger.v(TAG, "处理数据：%s 块", count);
+                }
+                // 缓冲区中的数据总是早于日志中的数据
+                if (spillJournal != null && spillJournal.hasPending())
+                {
+                    readSpill();
+                    continue;
+                }
+                if (isOver && ringBuffer.isEmpty())
+                {
+                    finish();
+                }
+                else
+                {
+                    ringBuffer.await(WAIT_TIMEOUT_MS);
+                }
+            }
         }
-        catch (FileNotFoundException e)
+        catch (IOException | RuntimeException e)
         {
             Logger.e(e, TAG, e.getMessage());
-            return;
         }
-        
-        while (start)
+        finally
         {
-            ChangeBuffer next = next();
-            Logger.v(TAG, "处理数据：%s", next == null ? "null" : next.getReadSize());
-            lameData(next);
+            if (!finished)
+            {
+                fail();
+            }
         }
     }
     
-    public void addChangeBuffer(ChangeBuffer changeBuffer)
+    /**
+     * 编码线程异常退出：释放资源，让等待中的采集线程返回，并通知调用方
+     */
+    private void fail()
     {
-        if (changeBuffer != null)
+        failed = true;
+        start = false;
+        encoder.close();
+        if (os != null)
         {
-            cacheBufferList.add(changeBuffer);
-            synchronized (this)
+            try
             {
-                notify();
+                os.close();
+            }
+            catch (IOException e)
+            {
+                Logger.e(e, TAG, e.getMessage());
             }
         }
+        closeSpillJournal();
+        Logger.e(TAG, "编码线程异常结束：%s", file.getAbsolutePath());
+        EncordFinishListener listener = encordFinishListener;
+        if (listener != null)
+        {
+            listener.onError(file);
+        }
     }
     
-    public void stopSafe(EncordFinishListener encordFinishListener)
+    /**
+     * 编码线程是否因异常退出（无法创建文件、写入失败等），此后 {@link #offer(ByteBuffer)} 总是返回 false
+     */
+    public boolean isFailed()
+    {
+        return failed;
+    }
+    
+    /**
+     * 编码线程启动前设置，异常退出时也会回调
+     */
+    public void setEncordFinishListener(EncordFinishListener encordFinishListener)
     {
         this.encordFinishListener = encordFinishListener;
-        isOver = true;
-        synchronized (this)
+    }
+    
+    /**
+     * 在采集线程中调用，复制 data 从 position 到 limit 的 PCM（本机字节序）到预先分配的缓冲区，
+     * 不改变 data 的 position；缓冲区已满时按 {@link RecordConfig.BacklogPolicy} 处理
+     *
+     * @return 是否全部写入，编码线程已异常退出时返回 false
+     */
+    public boolean offer(ByteBuffer data)
+    {
+        if (failed)
+        {
+            return false;
+        }
+        int readSize = data.remaining() / 2;
+        if (readSize <= 0)
         {
-            notify();
+            return true;
+        }
+        switch (backlogPolicy)
+        {
+            case SPILL:
+                return offerOrSpill(data, readSize);
+            case BLOCK:
+                awaitCapacity(readSize);
+                return ringBuffer.offer(data);
+            default:
+                return ringBuffer.offer(data);
         }
     }
     
-    private ChangeBuffer next()
+    private boolean offerOrSpill(ByteBuffer data, int readSize)
     {
-        for (;;)
+        if (spilling && !spillJournal.hasPending() && ringBuffer.isEmpty())
         {
-            if (cacheBufferList == null || cacheBufferList.size() == 0)
+            spilling = false;
+            spillFailed = false;
+            Logger.i(TAG, "编码已追上，停止写入溢出日志");
+            try
             {
-                try
-                {
-                    if (isOver)
-                    {
-                        finish();
-                    }
-                    synchronized (this)
-                    {
-                        wait();
-                    }
-                }
-                catch (Exception e)
-                {
-                    Logger.e(e, TAG, e.getMessage());
-                }
+                // 编码线程已读完日志，在下次写入前不会再读，可以安全地清空
+                spillJournal.reset();
             }
-            else
+            catch (IOException e)
             {
-                return cacheBufferList.remove(0);
+                Logger.e(e, TAG, e.getMessage());
             }
         }
+        if (!spilling && ringBuffer.remainingCapacity() >= slabCount(readSize))
+        {
+            return ringBuffer.offer(data);
+        }
+        if (!spilling)
+        {
+            spilling = true;
+            Logger.w(TAG, "编码缓冲区已满，写入溢出日志");
+        }
+        try
+        {
+            spillJournal.append(data);
+            ringBuffer.wakeup();
+            return true;
+        }
+        catch (IOException e)
+        {
+            // 每次溢出期间只记录一次，避免每个采集块都打印
+            if (!spillFailed)
+            {
+                spillFailed = true;
+                Logger.e(e, TAG, "写入溢出日志失败：%s", e.getMessage());
+            }
+            return false;
+        }
     }
     
-    private void lameData(ChangeBuffer changeBuffer)
+    private void awaitCapacity(int readSize)
     {
-        if (changeBuffer == null)
+        int needed = Math.min(slabCount(readSize), ringBuffer.capacity());
+        if (ringBuffer.remainingCapacity() >= needed)
         {
             return;
         }
-        short[] buffer = changeBuffer.getData();
-        int readSize = changeBuffer.getReadSize();
+        blockedCount++;
+        // 编码线程退出（正常结束或异常）后 start 为 false，不再等待
+        while (ringBuffer.remainingCapacity() < needed && start)
+        {
+            ringBuffer.wakeup();
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(BLOCK_WAIT_MS));
+        }
+    }
+    
+    private int slabCount(int readSize)
+    {
+        return (readSize + ringBuffer.getSlabSize() - 1) / ringBuffer.getSlabSize();
+    }
+    
+    private void readSpill()
+        throws IOException
+    {
+        int count = spillJournal.read(spillBuffer);
+        lameData(spillBuffer, count / 2);
+    }
+    
+    /**
+     * 缓冲区当前占用的分块数
+     */
+    public int getBacklog()
+    {
+        return ringBuffer.size();
+    }
+    
+    /**
+     * 缓冲区占用分块数的历史最大值
+     */
+    public long getHighWater()
+    {
+        return ringBuffer.getHighWater();
+    }
+    
+    /**
+     * 因缓冲区已满而丢弃的分块数
+     */
+    public long getDropped()
+    {
+        return ringBuffer.getDropped();
+    }
+    
+    /**
+     * 写入溢出日志的字节数
+     */
+    public long getSpilledBytes()
+    {
+        return spillJournal == null ? 0 : spillJournal.getWritten();
+    }
+    
+    /**
+     * BLOCK 策略下采集线程等待的次数
+     */
+    public long getBlockedCount()
+    {
+        return blockedCount;
+    }
+    
+    public void stopSafe(EncordFinishListener encordFinishListener)
+    {
+        this.encordFinishListener = encordFinishListener;
+        isOver = true;
+        ringBuffer.wakeup();
+    }
+    
+    private void lameData(ByteBuffer buffer, int readSize)
+        throws IOException
+    {
         if (readSize > 0)
         {
-            int encodedSize = Mp3Encoder.encode(buffer, buffer, readSize, mp3Buffer);
-            if (encodedSize < 0)
+            mp3Buffer.clear();
+            int encodedSize;
+            if (channels == 2)
             {
-                Logger.e(TAG, "Lame encoded size: " + encodedSize);
+                // 交错数据，每个声道 readSize / 2 个采样
+                encodedSize = encoder.encodeInterleaved(buffer, readSize / 2, mp3Buffer);
             }
-            try
+            else
             {
-                os.write(mp3Buffer, 0, encodedSize);
+                encodedSize = encoder.encode(buffer, buffer, readSize, mp3Buffer);
             }
-            catch (IOException e)
+            if (encodedSize < 0)
             {
-                Logger.e(e, TAG, "Unable to write to file");
+                Logger.e(TAG, "Lame encoded size: " + encodedSize);
+                return;
             }
+            writeMp3Buffer();
+        }
+    }
+    
+    /**
+     * 写入失败（如存储空间不足）时抛出，编码线程随之异常结束
+     */
+    private void writeMp3Buffer()
+        throws IOException
+    {
+        mp3Buffer.flip();
+        while (mp3Buffer.hasRemaining())
+        {
+            channel.write(mp3Buffer);
         }
     }
     
     private void finish()
+        throws IOException
     {
-        start = false;
-        final int flushResult = Mp3Encoder.flush(mp3Buffer);
+        mp3Buffer.clear();
+        final int flushResult = encoder.flush(mp3Buffer);
         if (flushResult > 0)
         {
-            try
-            {
-                os.write(mp3Buffer, 0, flushResult);
-                os.close();
-            }
-            catch (final IOException e)
-            {
-                Logger.e(TAG, e.getMessage());
-            }
+            writeMp3Buffer();
         }
-        Logger.d(TAG, "转换结束 :%s", file.length());
+        byte[] lameTag = encoder.getLameTagFrame();
+        encoder.close();
+        // 覆盖编码器在文件开头预留的空帧，播放器据此直接得到时长和 seek 表
+        if (lameTag.length > 0)
+        {
+            channel.write(ByteBuffer.wrap(lameTag), 0);
+        }
+        os.close();
+        closeSpillJournal();
+        finished = true;
+        start = false;
+        Logger.d(TAG, "转换结束 :%s, 缓冲区 %s/%s 块, 丢弃 %s 块, 溢出 %s 字节, 阻塞 %s 次",
+            file.length(),
+            ringBuffer.getHighWater(),
+            ringBuffer.capacity(),
+            ringBuffer.getDropped(),
+            getSpilledBytes(),
+            blockedCount);
         if (encordFinishListener != null)
         {
             encordFinishListener.onFinish();
         }
     }
     
-    public static class ChangeBuffer
+    private void closeSpillJournal()
     {
-        private short[] rawData;
-        
-        private int readSize;
-        
-        public ChangeBuffer(short[] rawData, int readSize)
+        if (spillJournal == null)
         {
-            this.rawData = rawData.clone();
-            this.readSize = readSize;
+            return;
         }
-        
-        short[] getData()
+        try
         {
-            return rawData;
+            spillJournal.close();
         }
-        
-        int getReadSize()
+        catch (IOException e)
         {
-            return readSize;
+            Logger.e(e, TAG, e.getMessage());
         }
     }
     
@@ -202,5 +460,12 @@ public class Mp3EncodeThread extends Thread
          * 格式转换完毕
          */
         void onFinish();
+        
+        /**
+         * 编码线程异常结束（无法创建文件、写入失败等），在编码线程中回调
+         *
+         * @param file 未完成的输出文件
+         */
+        void onError(File file);
     }
 }
@@ -1,22 +1,453 @@
 package com.xiaoxuan.audio.recorderlib.recorder.mp3;
 
-public class Mp3Encoder
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * LAME 编码器，每个实例持有独立的 native 句柄，可同时存在多个实例并在不同线程中并行编码
+ * <p>
+ * 同一实例的方法互斥，关闭后不可再使用。
+ * 使用 direct ByteBuffer 的重载直接读写 native 内存，PCM 与 MP3 数据都不经过 Java 堆。
+ */
+public class Mp3Encoder implements Closeable
 {
     static
     {
         System.loadLibrary("mp3lame");
     }
-    
-    public native static void close();
-    
-    public native static int encode(short[] buffer_l, short[] buffer_r, int samples, byte[] mp3buf);
-    
-    public native static int flush(byte[] mp3buf);
-    
-    public native static void init(int inSampleRate, int outChannel, int outSampleRate, int outBitrate, int quality);
-    
-    public static void init(int inSampleRate, int outChannel, int outSampleRate, int outBitrate)
+
+    public static final int DEFAULT_QUALITY = 7;
+
+    /**
+     * 由 LAME 根据声道数和码率选择声道模式
+     */
+    public static final int MODE_AUTO = -1;
+
+    /**
+     * 码率模式，对应 LAME 的 vbr_mode
+     */
+    public static final int VBR_OFF = 0;
+
+    public static final int VBR_ABR = 3;
+
+    public static final int VBR_DEFAULT = 4;
+
+    /**
+     * LAME 帧的最大长度，用于读取 LAME 标签帧
+     */
+    private static final int MAX_FRAME_SIZE = 2880;
+
+    /**
+     * native lame_global_flags 指针，0 表示已关闭
+     */
+    private long handle;
+
+    private final int channels;
+
+    /**
+     * @param inSampleRate 输入采样率
+     * @param inChannel 输入声道数
+     * @param options 编码参数
+     */
+    public Mp3Encoder(int inSampleRate, int inChannel, Options options)
+    {
+        this.channels = inChannel;
+        handle = create(inSampleRate, inChannel, options);
+        if (handle == 0)
+        {
+            throw new IllegalStateException("lame init failed");
+        }
+    }
+
+    /**
+     * CBR 编码
+     *
+     * @param inSampleRate 输入采样率
+     * @param inChannel 输入声道数
+     * @param outSampleRate 输出采样率
+     * @param outBitrate 输出码率 kbps
+     * @param quality 编码质量 0~9，0 最好最慢
+     * @param mode LAME 声道模式（MPEG_mode），如 {@link com.xiaoxuan.audio.recorderlib.recorder.RecordConfig.Mp3ChannelMode#getLameMode()}，
+     *            双声道输入使用 MONO 时由编码器混合为单声道
+     */
+    public Mp3Encoder(int inSampleRate, int inChannel, int outSampleRate, int outBitrate, int quality, int mode)
+    {
+        this(inSampleRate,
+            inChannel,
+            new Options().setOutSampleRate(outSampleRate).setBitrate(outBitrate).setQuality(quality).setMode(mode));
+    }
+
+    public Mp3Encoder(int inSampleRate, int inChannel, int outSampleRate, int outBitrate, int quality)
+    {
+        this(inSampleRate, inChannel, outSampleRate, outBitrate, quality, MODE_AUTO);
+    }
+
+    public Mp3Encoder(int inSampleRate, int inChannel, int outSampleRate, int outBitrate)
+    {
+        this(inSampleRate, inChannel, outSampleRate, outBitrate, DEFAULT_QUALITY);
+    }
+
+    /**
+     * LAME 首次初始化时会填充全局查找表，创建过程串行执行
+     */
+    private static synchronized long create(int inSampleRate, int inChannel, Options options)
+    {
+        return nativeInit(inSampleRate,
+            inChannel,
+            options.outSampleRate > 0 ? options.outSampleRate : inSampleRate,
+            options.bitrate,
+            options.quality,
+            options.mode,
+            options.vbrMode,
+            options.vbrQuality,
+            options.writeVbrTag,
+            options.disableReservoir);
+    }
+
+    /**
+     * 输入声道数
+     */
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    /**
+     * @param bufferL 左声道采样
+     * @param bufferR 右声道采样
+     * @param samples 每个声道的采样数
+     * @param mp3buf 输出缓冲区，建议不小于 7200 + 1.25 * samples
+     * @return 写入 mp3buf 的字节数，负数为 LAME 错误码
+     */
+    public synchronized int encode(short[] bufferL, short[] bufferR, int samples, byte[] mp3buf)
+    {
+        checkOpen();
+        return nativeEncode(handle, bufferL, bufferR, samples, mp3buf);
+    }
+
+    /**
+     * 编码 direct ByteBuffer 中的 PCM
+     *
+     * @param bufferL 左声道采样，从 position 开始，本机字节序
+     * @param bufferR 右声道采样，单声道时可与 bufferL 相同
+     * @param samples 每个声道的采样数
+     * @param mp3buf 输出缓冲区，从 position 写入至多 remaining 字节，完成后 position 后移
+     * @return 写入 mp3buf 的字节数，负数为 LAME 错误码
+     */
+    public synchronized int encode(ByteBuffer bufferL, ByteBuffer bufferR, int samples, ByteBuffer mp3buf)
+    {
+        checkOpen();
+        checkDirect(bufferL, samples * 2);
+        checkDirect(bufferR, samples * 2);
+        checkDirect(mp3buf, 0);
+        int result = nativeEncodeDirect(handle,
+            bufferL,
+            bufferL.position(),
+            bufferR,
+            bufferR.position(),
+            samples,
+            mp3buf,
+            mp3buf.position(),
+            mp3buf.remaining());
+        if (result > 0)
+        {
+            mp3buf.position(mp3buf.position() + result);
+        }
+        return result;
+    }
+
+    /**
+     * 编码双声道交错的 PCM（L R L R ...）
+     *
+     * @param pcm 交错采样
+     * @param samples 每个声道的采样数，即 pcm 中有效长度的一半
+     * @param mp3buf 输出缓冲区
+     * @return 写入 mp3buf 的字节数，负数为 LAME 错误码
+     */
+    public synchronized int encodeInterleaved(short[] pcm, int samples, byte[] mp3buf)
+    {
+        checkOpen();
+        checkStereo();
+        return nativeEncodeInterleaved(handle, pcm, samples, mp3buf);
+    }
+
+    /**
+     * 编码 direct ByteBuffer 中双声道交错的 PCM
+     *
+     * @param pcm 交错采样，从 position 开始，本机字节序
+     * @param samples 每个声道的采样数
+     * @param mp3buf 输出缓冲区，从 position 写入至多 remaining 字节，完成后 position 后移
+     * @return 写入 mp3buf 的字节数，负数为 LAME 错误码
+     */
+    public synchronized int encodeInterleaved(ByteBuffer pcm, int samples, ByteBuffer mp3buf)
+    {
+        checkOpen();
+        checkStereo();
+        checkDirect(pcm, samples * 4);
+        checkDirect(mp3buf, 0);
+        int result = nativeEncodeInterleavedDirect(handle,
+            pcm,
+            pcm.position(),
+            samples,
+            mp3buf,
+            mp3buf.position(),
+            mp3buf.remaining());
+        if (result > 0)
+        {
+            mp3buf.position(mp3buf.position() + result);
+        }
+        return result;
+    }
+
+    /**
+     * 输出剩余数据，之后不可再编码
+     *
+     * @return 写入 mp3buf 的字节数
+     */
+    public synchronized int flush(byte[] mp3buf)
+    {
+        checkOpen();
+        return nativeFlush(handle, mp3buf);
+    }
+
+    /**
+     * 输出剩余数据到 direct ByteBuffer，之后不可再编码
+     *
+     * @return 写入 mp3buf 的字节数，完成后 position 后移
+     */
+    public synchronized int flush(ByteBuffer mp3buf)
+    {
+        checkOpen();
+        checkDirect(mp3buf, 0);
+        int result = nativeFlushDirect(handle, mp3buf, mp3buf.position(), mp3buf.remaining());
+        if (result > 0)
+        {
+            mp3buf.position(mp3buf.position() + result);
+        }
+        return result;
+    }
+
+    /**
+     * 获取 LAME 标签帧（含 Xing/Info 头、时长和 seek 表），在 {@link #flush} 之后调用，
+     * 用它覆盖编码输出开头预留的空帧
+     *
+     * @return 标签帧，LAME 未生成标签时为空数组
+     */
+    public synchronized byte[] getLameTagFrame()
+    {
+        checkOpen();
+        byte[] frame = new byte[MAX_FRAME_SIZE];
+        int size = nativeGetLameTagFrame(handle, frame);
+        if (size > frame.length)
+        {
+            frame = new byte[size];
+            size = nativeGetLameTagFrame(handle, frame);
+        }
+        return Arrays.copyOf(frame, Math.min(size, frame.length));
+    }
+
+    public synchronized boolean isClosed()
+    {
+        return handle == 0;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        if (handle != 0)
+        {
+            nativeClose(handle);
+            handle = 0;
+        }
+    }
+
+    private void checkOpen()
+    {
+        if (handle == 0)
+        {
+            throw new IllegalStateException("Mp3Encoder is closed");
+        }
+    }
+
+    private void checkStereo()
+    {
+        if (channels != 2)
+        {
+            throw new IllegalStateException("interleaved input requires 2 channels");
+        }
+    }
+
+    private static void checkDirect(ByteBuffer buffer, int required)
+    {
+        if (!buffer.isDirect())
+        {
+            throw new IllegalArgumentException("ByteBuffer must be direct");
+        }
+        if (buffer.remaining() < required)
+        {
+            throw new IllegalArgumentException("ByteBuffer remaining " + buffer.remaining() + " < " + required);
+        }
+    }
+
+    private native static long nativeInit(int inSampleRate, int inChannel, int outSampleRate, int outBitrate,
+        int quality, int mode, int vbrMode, float vbrQuality, boolean writeVbrTag, boolean disableReservoir);
+
+    private native static int nativeEncode(long handle, short[] bufferL, short[] bufferR, int samples, byte[] mp3buf);
+
+    private native static int nativeEncodeInterleaved(long handle, short[] pcm, int samples, byte[] mp3buf);
+
+    private native static int nativeEncodeInterleavedDirect(long handle, ByteBuffer pcm, int offset, int samples,
+        ByteBuffer mp3buf, int mp3bufOffset, int mp3bufSize);
+
+    private native static int nativeFlush(long handle, byte[] mp3buf);
+
+    private native static int nativeEncodeDirect(long handle, ByteBuffer bufferL, int offsetL, ByteBuffer bufferR,
+        int offsetR, int samples, ByteBuffer mp3buf, int mp3bufOffset, int mp3bufSize);
+
+    private native static int nativeFlushDirect(long handle, ByteBuffer mp3buf, int mp3bufOffset, int mp3bufSize);
+
+    private native static int nativeGetLameTagFrame(long handle, byte[] buffer);
+
+    private native static void nativeClose(long handle);
+
+    /**
+     * 编码参数
+     */
+    public static class Options
     {
-        init(inSampleRate, outChannel, outSampleRate, outBitrate, 7);
+        private int outSampleRate;
+
+        private int bitrate = 128;
+
+        private int quality = DEFAULT_QUALITY;
+
+        private int mode = MODE_AUTO;
+
+        private int vbrMode = VBR_OFF;
+
+        private float vbrQuality = 4;
+
+        private boolean writeVbrTag = true;
+
+        private boolean disableReservoir;
+
+        public Options()
+        {
+        }
+
+        public Options(Options other)
+        {
+            this.outSampleRate = other.outSampleRate;
+            this.bitrate = other.bitrate;
+            this.quality = other.quality;
+            this.mode = other.mode;
+            this.vbrMode = other.vbrMode;
+            this.vbrQuality = other.vbrQuality;
+            this.writeVbrTag = other.writeVbrTag;
+            this.disableReservoir = other.disableReservoir;
+        }
+
+        /**
+         * @param outSampleRate 输出采样率，0 表示与输入相同
+         */
+        public Options setOutSampleRate(int outSampleRate)
+        {
+            this.outSampleRate = outSampleRate;
+            return this;
+        }
+
+        /**
+         * @param bitrate CBR 的码率或 ABR 的平均码率 kbps，VBR 时忽略
+         */
+        public Options setBitrate(int bitrate)
+        {
+            this.bitrate = bitrate;
+            return this;
+        }
+
+        /**
+         * @param quality 编码算法质量 0~9，0 最好最慢
+         */
+        public Options setQuality(int quality)
+        {
+            this.quality = quality;
+            return this;
+        }
+
+        /**
+         * @param mode LAME 声道模式，见 {@link #MODE_AUTO}
+         */
+        public Options setMode(int mode)
+        {
+            this.mode = mode;
+            return this;
+        }
+
+        /**
+         * @param vbrMode {@link #VBR_OFF}、{@link #VBR_ABR} 或 {@link #VBR_DEFAULT}
+         */
+        public Options setVbrMode(int vbrMode)
+        {
+            this.vbrMode = vbrMode;
+            return this;
+        }
+
+        /**
+         * @param vbrQuality VBR 质量 0~9.999，0 码率最高
+         */
+        public Options setVbrQuality(float vbrQuality)
+        {
+            this.vbrQuality = vbrQuality;
+            return this;
+        }
+
+        /**
+         * @param writeVbrTag 是否在开头预留 LAME 标签帧，默认 true
+         */
+        public Options setWriteVbrTag(boolean writeVbrTag)
+        {
+            this.writeVbrTag = writeVbrTag;
+            return this;
+        }
+
+        /**
+         * @param disableReservoir 是否禁用比特池，禁用后每帧独立，可在任意帧边界拼接，同码率下音质略差
+         */
+        public Options setDisableReservoir(boolean disableReservoir)
+        {
+            this.disableReservoir = disableReservoir;
+            return this;
+        }
+
+        public int getOutSampleRate()
+        {
+            return outSampleRate;
+        }
+
+        public int getBitrate()
+        {
+            return bitrate;
+        }
+
+        public int getQuality()
+        {
+            return quality;
+        }
+
+        public int getMode()
+        {
+            return mode;
+        }
+
+        public int getVbrMode()
+        {
+            return vbrMode;
+        }
+
+        public float getVbrQuality()
+        {
+            return vbrQuality;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,463 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * 纯 Java 的 MP3（MPEG 1/2/2.5 Layer III）解析，不依赖 Android
+ * <p>
+ * 跳过 ID3v2 后读取第一帧中的 Xing/Info/VBRI 头和 LAME 标签，有头信息时不需要扫描整个文件；
+ * 没有头信息或需要精确 seek 索引时逐帧读取 4 字节帧头，按帧长跳到下一帧。
+ */
+public final class Mp3FrameScanner
+{
+    /**
+     * 逐帧扫描时 seek 索引的间隔帧数
+     */
+    public static final int INDEX_INTERVAL = 16;
+
+    private static final int WINDOW_SIZE = 64 * 1024;
+
+    private static final int VERSION_25 = 0;
+
+    private static final int VERSION_2 = 2;
+
+    private static final int VERSION_1 = 3;
+
+    private static final int[] BITRATE_V1 = {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320};
+
+    private static final int[] BITRATE_V2 = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+
+    private static final int[] SAMPLE_RATE_V1 = {44100, 48000, 32000};
+
+    /**
+     * 同一码流中不变的字段：同步字、版本、层、采样率
+     */
+    private static final int CONSTANT_MASK = 0xFFFE0C00;
+
+    private Mp3FrameScanner()
+    {
+    }
+
+    public static Mp3Info scan(File file, boolean buildSeekIndex)
+        throws IOException
+    {
+        try (FileInputStream in = new FileInputStream(file))
+        {
+            return scan(in.getChannel(), buildSeekIndex);
+        }
+    }
+
+    /**
+     * @param buildSeekIndex 是否逐帧扫描生成精确的 seek 索引；为 false 且存在头信息时只读取文件开头
+     * @return 找不到有效帧时返回 null
+     */
+    public static Mp3Info scan(FileChannel channel, boolean buildSeekIndex)
+        throws IOException
+    {
+        Reader reader = new Reader(channel);
+        long end = reader.size;
+        if (end >= 128 && reader.ensure(end - 128, 3) && reader.get(end - 128) == 'T' && reader.get(end - 127) == 'A'
+            && reader.get(end - 126) == 'G')
+        {
+            // ID3v1
+            end -= 128;
+        }
+        long first = findFirstFrame(reader, skipId3v2(reader), end);
+        if (first < 0)
+        {
+            return null;
+        }
+        int header = reader.getInt(first);
+        Mp3Info info = new Mp3Info();
+        info.sampleRate = getSampleRate(header);
+        info.channels = getChannels(header);
+        info.samplesPerFrame = getSamplesPerFrame(header);
+        info.streamOffset = first;
+        info.audioOffset = first;
+        boolean hasHeader = readXing(reader, first, header, info) || readVbri(reader, first, header, info);
+        if (hasHeader)
+        {
+            info.audioOffset = first + getFrameLength(header);
+            if (info.streamBytes <= 0)
+            {
+                info.streamBytes = end - first;
+            }
+        }
+        if (!hasHeader || buildSeekIndex || info.frameCount <= 0)
+        {
+            scanFrames(reader, info, end);
+        }
+        return info;
+    }
+
+    private static long skipId3v2(Reader reader)
+        throws IOException
+    {
+        long position = 0;
+        while (reader.ensure(position, 10) && reader.get(position) == 'I' && reader.get(position + 1) == 'D'
+            && reader.get(position + 2) == '3')
+        {
+            int flags = reader.get(position + 5);
+            long size = ((reader.get(position + 6) & 0x7F) << 21) | ((reader.get(position + 7) & 0x7F) << 14)
+                | ((reader.get(position + 8) & 0x7F) << 7) | (reader.get(position + 9) & 0x7F);
+            position += 10 + size + ((flags & 0x10) != 0 ? 10 : 0);
+        }
+        return position;
+    }
+
+    /**
+     * 查找第一个有效帧，要求紧随其后的帧头也有效且参数一致，避免把数据中的同步字误认为帧头
+     */
+    private static long findFirstFrame(Reader reader, long position, long end)
+        throws IOException
+    {
+        for (; position + 4 <= end; position++)
+        {
+            if (!reader.ensure(position, 4))
+            {
+                return -1;
+            }
+            int header = reader.getInt(position);
+            if (!isValidHeader(header))
+            {
+                continue;
+            }
+            long next = position + getFrameLength(header);
+            if (next + 4 > end)
+            {
+                return position;
+            }
+            if (reader.ensure(next, 4) && isSameStream(header, reader.getInt(next)))
+            {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    private static void scanFrames(Reader reader, Mp3Info info, long end)
+        throws IOException
+    {
+        long position = info.audioOffset;
+        int first = reader.getInt(info.streamOffset);
+        long frames = 0;
+        int bitrate = -1;
+        boolean variable = false;
+        long[] index = new long[256];
+        int indexSize = 0;
+        long lastEnd = position;
+        while (position + 4 <= end && reader.ensure(position, 4))
+        {
+            int header = reader.getInt(position);
+            if (!isSameStream(first, header))
+            {
+                // 失去同步，向后查找下一帧
+                long next = findFirstFrame(reader, position + 1, end);
+                if (next < 0)
+                {
+                    break;
+                }
+                position = next;
+                continue;
+            }
+            int length = getFrameLength(header);
+            if (position + length > end)
+            {
+                break;
+            }
+            if (frames % INDEX_INTERVAL == 0)
+            {
+                if (indexSize == index.length)
+                {
+                    index = Arrays.copyOf(index, indexSize * 2);
+                }
+                index[indexSize++] = position;
+            }
+            int frameBitrate = getBitrate(header);
+            if (bitrate >= 0 && frameBitrate != bitrate)
+            {
+                variable = true;
+            }
+            bitrate = frameBitrate;
+            frames++;
+            position += length;
+            lastEnd = position;
+        }
+        info.frameCount = frames;
+        info.streamBytes = lastEnd - info.streamOffset;
+        info.variableBitrate |= variable;
+        info.indexOffsets = Arrays.copyOf(index, indexSize);
+        info.indexInterval = INDEX_INTERVAL;
+    }
+
+    private static boolean readXing(Reader reader, long frame, int header, Mp3Info info)
+        throws IOException
+    {
+        long position = frame + 4 + getSideInfoSize(header);
+        if (!reader.ensure(position, 8))
+        {
+            return false;
+        }
+        int id = reader.getInt(position);
+        if (id == 0x58696E67)
+        {
+            info.tagType = Mp3Info.TagType.XING;
+            info.variableBitrate = true;
+        }
+        else if (id == 0x496E666F)
+        {
+            info.tagType = Mp3Info.TagType.INFO;
+        }
+        else
+        {
+            return false;
+        }
+        int flags = reader.getInt(position + 4);
+        position += 8;
+        if (!reader.ensure(position, 4 + 4 + 100 + 4 + 36))
+        {
+            return true;
+        }
+        if ((flags & 0x1) != 0)
+        {
+            info.frameCount = reader.getInt(position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & 0x2) != 0)
+        {
+            info.streamBytes = reader.getInt(position) & 0xFFFFFFFFL;
+            position += 4;
+        }
+        if ((flags & 0x4) != 0)
+        {
+            info.toc = new byte[100];
+            for (int i = 0; i < 100; i++)
+            {
+                info.toc[i] = reader.get(position + i);
+            }
+            position += 100;
+        }
+        if ((flags & 0x8) != 0)
+        {
+            position += 4;
+        }
+        if (reader.getInt(position) == 0x4C414D45)
+        {
+            // LAME 标签：偏移 21 处 12 位编码器延迟 + 12 位填充
+            int delayPadding =
+                ((reader.get(position + 21) & 0xFF) << 16) | ((reader.get(position + 22) & 0xFF) << 8) | (reader.get(
+                    position + 23) & 0xFF);
+            info.encoderDelay = delayPadding >>> 12;
+            info.encoderPadding = delayPadding & 0xFFF;
+        }
+        return true;
+    }
+
+    private static boolean readVbri(Reader reader, long frame, int header, Mp3Info info)
+        throws IOException
+    {
+        long position = frame + 4 + 32;
+        if (!reader.ensure(position, 26) || reader.getInt(position) != 0x56425249)
+        {
+            return false;
+        }
+        info.tagType = Mp3Info.TagType.VBRI;
+        info.variableBitrate = true;
+        info.streamBytes = reader.getInt(position + 10) & 0xFFFFFFFFL;
+        info.frameCount = reader.getInt(position + 14) & 0xFFFFFFFFL;
+        int entries = reader.getShort(position + 18);
+        int scale = reader.getShort(position + 20);
+        int entrySize = reader.getShort(position + 22);
+        int framesPerEntry = reader.getShort(position + 24);
+        position += 26;
+        if (entries <= 0 || framesPerEntry <= 0 || entrySize < 1 || entrySize > 4
+            || !reader.ensure(position, entries * entrySize))
+        {
+            return true;
+        }
+        long[] index = new long[entries + 1];
+        long offset = frame + getFrameLength(header);
+        index[0] = offset;
+        for (int i = 0; i < entries; i++)
+        {
+            long value = 0;
+            for (int b = 0; b < entrySize; b++)
+            {
+                value = (value << 8) | (reader.get(position + i * entrySize + b) & 0xFF);
+            }
+            offset += value * scale;
+            index[i + 1] = offset;
+        }
+        info.indexOffsets = index;
+        info.indexInterval = framesPerEntry;
+        return true;
+    }
+
+    /**
+     * 是否为 Layer III 的有效帧头
+     */
+    public static boolean isValidHeader(int header)
+    {
+        return (header & 0xFFE00000) == 0xFFE00000 && getVersion(header) != 1 && ((header >>> 17) & 0x3) == 1
+            && ((header >>> 12) & 0xF) != 0 && ((header >>> 12) & 0xF) != 0xF && ((header >>> 10) & 0x3) != 3;
+    }
+
+    /**
+     * 两个帧头是否属于同一码流（版本、层、采样率相同）
+     */
+    public static boolean isSameStream(int first, int header)
+    {
+        return isValidHeader(header) && (first & CONSTANT_MASK) == (header & CONSTANT_MASK);
+    }
+
+    public static int getVersion(int header)
+    {
+        return (header >>> 19) & 0x3;
+    }
+
+    /**
+     * @return 码率 kbps
+     */
+    public static int getBitrate(int header)
+    {
+        int index = (header >>> 12) & 0xF;
+        return getVersion(header) == VERSION_1 ? BITRATE_V1[index] : BITRATE_V2[index];
+    }
+
+    public static int getSampleRate(int header)
+    {
+        int rate = SAMPLE_RATE_V1[(header >>> 10) & 0x3];
+        switch (getVersion(header))
+        {
+            case VERSION_2:
+                return rate / 2;
+            case VERSION_25:
+                return rate / 4;
+            default:
+                return rate;
+        }
+    }
+
+    public static int getChannels(int header)
+    {
+        return ((header >>> 6) & 0x3) == 3 ? 1 : 2;
+    }
+
+    public static int getSamplesPerFrame(int header)
+    {
+        return getVersion(header) == VERSION_1 ? 1152 : 576;
+    }
+
+    /**
+     * 帧长度（字节），包含帧头
+     */
+    public static int getFrameLength(int header)
+    {
+        int padding = (header >>> 9) & 0x1;
+        int coefficient = getVersion(header) == VERSION_1 ? 144000 : 72000;
+        return coefficient * getBitrate(header) / getSampleRate(header) + padding;
+    }
+
+    /**
+     * 帧头之后 side info 的长度，Xing 头紧随其后
+     */
+    public static int getSideInfoSize(int header)
+    {
+        boolean mono = getChannels(header) == 1;
+        if (getVersion(header) == VERSION_1)
+        {
+            return mono ? 17 : 32;
+        }
+        return mono ? 9 : 17;
+    }
+
+    /**
+     * 在 FileChannel 上的滑动窗口，按需定位读取，帧头、头信息都从窗口中解析
+     * <p>
+     * 任何一次 ensure 都可能移动窗口，所以 get/getShort/getInt 每次读取前都重新保证数据在窗口中，
+     * 之前 ensure 过的位置也不能假定仍然可读。
+     */
+    private static final class Reader
+    {
+        private final FileChannel channel;
+
+        private final long size;
+
+        private final ByteBuffer window = ByteBuffer.allocate(WINDOW_SIZE);
+
+        private long start;
+
+        Reader(FileChannel channel)
+            throws IOException
+        {
+            this.channel = channel;
+            this.size = channel.size();
+            window.limit(0);
+        }
+
+        /**
+         * 保证 [position, position + length) 在窗口中
+         *
+         * @return 文件中没有足够数据时返回 false
+         */
+        boolean ensure(long position, int length)
+            throws IOException
+        {
+            if (position >= start && position + length <= start + window.limit())
+            {
+                return true;
+            }
+            if (position + length > size)
+            {
+                return false;
+            }
+            window.clear();
+            while (window.hasRemaining())
+            {
+                if (channel.read(window, position + window.position()) < 0)
+                {
+                    break;
+                }
+            }
+            window.flip();
+            start = position;
+            return window.limit() >= length;
+        }
+
+        byte get(long position)
+            throws IOException
+        {
+            require(position, 1);
+            return window.get((int)(position - start));
+        }
+
+        int getShort(long position)
+            throws IOException
+        {
+            require(position, 2);
+            return window.getShort((int)(position - start)) & 0xFFFF;
+        }
+
+        int getInt(long position)
+            throws IOException
+        {
+            require(position, 4);
+            return window.getInt((int)(position - start));
+        }
+
+        private void require(long position, int length)
+            throws IOException
+        {
+            if (!ensure(position, length))
+            {
+                throw new EOFException("read " + length + " bytes at " + position + ", file size " + size);
+            }
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+/**
+ * {@link Mp3FrameScanner} 的解析结果：时长、码率以及可选的采样到文件位置的 seek 索引
+ */
+public class Mp3Info
+{
+    public enum TagType
+    {
+        /**
+         * 没有头信息，时长由逐帧扫描得到
+         */
+        NONE,
+        /**
+         * Xing 头，通常为 VBR/ABR
+         */
+        XING,
+        /**
+         * Info 头，LAME 为 CBR 写入的 Xing 头
+         */
+        INFO,
+        /**
+         * Fraunhofer VBRI 头
+         */
+        VBRI
+    }
+
+    TagType tagType = TagType.NONE;
+
+    int sampleRate;
+
+    int channels;
+
+    int samplesPerFrame;
+
+    long frameCount;
+
+    /**
+     * LAME 标签中的编码器延迟和末尾填充采样数
+     */
+    int encoderDelay;
+
+    int encoderPadding;
+
+    /**
+     * 第一帧的位置，存在头信息时为头信息帧
+     */
+    long streamOffset;
+
+    /**
+     * 第一个音频帧的位置
+     */
+    long audioOffset;
+
+    /**
+     * 从 streamOffset 开始的 MPEG 数据字节数
+     */
+    long streamBytes;
+
+    boolean variableBitrate;
+
+    /**
+     * Xing 头中的 100 项 seek 表，没有时为 null
+     */
+    byte[] toc;
+
+    /**
+     * 每 indexInterval 帧一个的帧位置，没有时为 null
+     */
+    long[] indexOffsets;
+
+    int indexInterval;
+
+    Mp3Info()
+    {
+    }
+
+    public TagType getTagType()
+    {
+        return tagType;
+    }
+
+    public int getSampleRate()
+    {
+        return sampleRate;
+    }
+
+    public int getChannels()
+    {
+        return channels;
+    }
+
+    public int getSamplesPerFrame()
+    {
+        return samplesPerFrame;
+    }
+
+    /**
+     * 音频帧数，不含头信息帧
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    public int getEncoderDelay()
+    {
+        return encoderDelay;
+    }
+
+    public int getEncoderPadding()
+    {
+        return encoderPadding;
+    }
+
+    public long getAudioOffset()
+    {
+        return audioOffset;
+    }
+
+    /**
+     * 每个声道的有效采样数，已去掉 LAME 标签记录的编码器延迟和填充
+     */
+    public long getTotalSamples()
+    {
+        long samples = frameCount * samplesPerFrame - encoderDelay - encoderPadding;
+        return Math.max(0, samples);
+    }
+
+    public long getDurationUs()
+    {
+        return sampleRate == 0 ? 0 : getTotalSamples() * 1000000L / sampleRate;
+    }
+
+    public long getDurationMs()
+    {
+        return sampleRate == 0 ? 0 : getTotalSamples() * 1000L / sampleRate;
+    }
+
+    /**
+     * 平均码率 kbps
+     */
+    public int getBitrate()
+    {
+        long samples = frameCount * samplesPerFrame;
+        if (samples == 0)
+        {
+            return 0;
+        }
+        return (int)(streamBytes * 8L * sampleRate / samples / 1000);
+    }
+
+    public boolean isVariableBitrate()
+    {
+        return variableBitrate;
+    }
+
+    /**
+     * 是否有逐帧扫描或 VBRI 得到的精确 seek 索引
+     */
+    public boolean hasSeekIndex()
+    {
+        return indexOffsets != null;
+    }
+
+    /**
+     * 查找包含指定采样的位置，从返回的位置开始解码即可到达该采样附近
+     * <p>
+     * 优先使用 seek 索引，返回不晚于该采样所在帧的帧位置；其次使用 Xing 的 seek 表，都没有时按平均码率估算。
+     *
+     * @param sample 每个声道的采样序号
+     * @return 文件中的字节位置
+     */
+    public long getByteOffset(long sample)
+    {
+        long totalFrameSamples = frameCount * samplesPerFrame;
+        if (totalFrameSamples == 0)
+        {
+            return audioOffset;
+        }
+        long frame = Math.max(0, Math.min(sample + encoderDelay, totalFrameSamples - 1)) / samplesPerFrame;
+        if (indexOffsets != null)
+        {
+            int entry = (int)Math.min(frame / indexInterval, indexOffsets.length - 1);
+            return indexOffsets[entry];
+        }
+        long audioBytes = streamBytes - (audioOffset - streamOffset);
+        if (toc != null)
+        {
+            double percent = frame * 100.0 / frameCount;
+            int a = (int)Math.min(99, percent);
+            double fa = toc[a] & 0xFF;
+            double fb = a < 99 ? toc[a + 1] & 0xFF : 256;
+            double fx = fa + (fb - fa) * (percent - a);
+            return Math.max(audioOffset, streamOffset + (long)(fx / 256.0 * streamBytes));
+        }
+        return audioOffset + audioBytes * frame / frameCount;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "Mp3Info{" + "tagType=" + tagType + ", sampleRate=" + sampleRate + ", channels=" + channels
+            + ", frameCount=" + frameCount + ", durationMs=" + getDurationMs() + ", bitrate=" + getBitrate() + '}';
+    }
+}
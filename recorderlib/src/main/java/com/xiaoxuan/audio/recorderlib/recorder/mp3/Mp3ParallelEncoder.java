@@ -0,0 +1,575 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import com.xiaoxuan.audio.recorderlib.recorder.wav.WavUtils;
+import com.xiaoxuan.audio.recorderlib.utils.FileMerger;
+import com.xiaoxuan.audio.recorderlib.utils.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * 已录制完成的 PCM/WAV 分段并行编码为 MP3，每段使用独立的 {@link Mp3Encoder}
+ * <p>
+ * 各段禁用比特池，帧与帧之间没有数据依赖，可以在帧边界直接拼接。分段按帧长对齐，
+ * 每段向前多编码 {@link #PRE_ROLL_FRAMES} 帧让心理声学模型预热、向后多编码 {@link #POST_ROLL_FRAMES} 帧
+ * 保证段尾的帧使用真实数据，拼接时丢弃这些重叠帧。第一段的 LAME 标签帧最后按整个文件的帧数、字节数、
+ * seek 表、填充和 CRC 改写后写在文件开头。
+ * <p>
+ * 代价：比特池对整个文件禁用，而不只是在段边界。CBR 下每帧大小不变，只是复杂段的音质略低；
+ * VBR/ABR 下同等音质文件约大 12%，且 LAME 标签中的编码参数标记为非最优。
+ * 因此默认使用 CBR，对体积敏感的 VBR 编码应使用 {@link Mp3EncodeThread} 或 {@link Mp3Transcoder} 单线程编码。
+ */
+public class Mp3ParallelEncoder
+{
+    private static final String TAG = Mp3ParallelEncoder.class.getSimpleName();
+
+    /**
+     * 默认每段时长 秒
+     */
+    public static final int DEFAULT_CHUNK_SECONDS = 30;
+
+    private static final int PRE_ROLL_FRAMES = 8;
+
+    private static final int POST_ROLL_FRAMES = 8;
+
+    /**
+     * 每次读取并编码的帧数
+     */
+    private static final int BLOCK_FRAMES = 32;
+
+    private static final int MAX_FRAME_SIZE = 2881;
+
+    private static final int[] SAMPLE_RATES = {8000, 11025, 12000, 16000, 22050, 24000, 32000, 44100, 48000};
+
+    // "Xing" "Info" "LAME"
+    private static final int XING = 0x58696E67;
+
+    private static final int INFO = 0x496E666F;
+
+    private static final int LAME = 0x4C414D45;
+
+    private final ExecutorService executor;
+
+    private final boolean ownExecutor;
+
+    private Mp3Encoder.Options options = new Mp3Encoder.Options().setVbrMode(Mp3Encoder.VBR_OFF);
+
+    private int chunkSeconds = DEFAULT_CHUNK_SECONDS;
+
+    private volatile boolean canceled;
+
+    public Mp3ParallelEncoder()
+    {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param threads 同时编码的段数
+     */
+    public Mp3ParallelEncoder(int threads)
+    {
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        this.ownExecutor = true;
+    }
+
+    /**
+     * @param executor 由调用方管理的线程池，{@link #shutdown()} 不会关闭它
+     */
+    public Mp3ParallelEncoder(ExecutorService executor)
+    {
+        this.executor = executor;
+        this.ownExecutor = false;
+    }
+
+    /**
+     * 编码参数，输出采样率固定为输入采样率，比特池和 LAME 标签由本类控制，默认 CBR
+     * <p>
+     * 比特池始终禁用，使用 VBR/ABR 时文件约大 12%，见类说明
+     */
+    public Mp3ParallelEncoder setOptions(Mp3Encoder.Options options)
+    {
+        this.options = new Mp3Encoder.Options(options);
+        return this;
+    }
+
+    /**
+     * 每段时长，越短并行度越高，但重叠帧带来的额外编码量越大
+     */
+    public Mp3ParallelEncoder setChunkSeconds(int chunkSeconds)
+    {
+        this.chunkSeconds = Math.max(1, chunkSeconds);
+        return this;
+    }
+
+    /**
+     * 编码 16 位 PCM 格式的 WAV 文件
+     *
+     * @return 是否完成，被取消时返回 false
+     */
+    public boolean encodeWav(File wav, File mp3)
+        throws IOException
+    {
+        try (FileInputStream in = new FileInputStream(wav))
+        {
+            FileChannel channel = in.getChannel();
+            int[] format = WavUtils.findFormatChunk(channel);
+            long[] data = WavUtils.findDataChunk(channel);
+            if (format == null || data == null)
+            {
+                throw new IOException("not a wav file: " + wav.getAbsolutePath());
+            }
+            if (format[0] != 1 || format[3] != 16)
+            {
+                throw new IOException("unsupported wav format " + format[0] + ", bits " + format[3]);
+            }
+            return encode(channel, data[0], data[1], format[2], format[1], mp3);
+        }
+    }
+
+    /**
+     * 编码 16 位本机字节序的 PCM 文件，双声道为交错排列
+     *
+     * @return 是否完成，被取消时返回 false
+     */
+    public boolean encodePcm(File pcm, File mp3, int sampleRate, int channels)
+        throws IOException
+    {
+        try (FileInputStream in = new FileInputStream(pcm))
+        {
+            FileChannel channel = in.getChannel();
+            return encode(channel, 0, channel.size(), sampleRate, channels, mp3);
+        }
+    }
+
+    /**
+     * 取消正在进行的编码，已生成的分段文件会被删除
+     */
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    /**
+     * 关闭内部创建的线程池
+     */
+    public void shutdown()
+    {
+        if (ownExecutor)
+        {
+            executor.shutdown();
+        }
+    }
+
+    private boolean encode(FileChannel channel, long dataOffset, long dataLength, int sampleRate, int channels,
+        File mp3)
+        throws IOException
+    {
+        if (Arrays.binarySearch(SAMPLE_RATES, sampleRate) < 0)
+        {
+            throw new IllegalArgumentException("unsupported sample rate " + sampleRate);
+        }
+        if (channels != 1 && channels != 2)
+        {
+            throw new IllegalArgumentException("unsupported channels " + channels);
+        }
+        canceled = false;
+        long startTime = System.currentTimeMillis();
+
+        int samplesPerFrame = sampleRate >= 32000 ? 1152 : 576;
+        long totalSamples = dataLength / (channels * 2);
+        long chunkFrames = Math.max(1, (long)chunkSeconds * sampleRate / samplesPerFrame);
+        long chunkSamples = chunkFrames * samplesPerFrame;
+        int chunkCount = (int)Math.max(1, (totalSamples + chunkSamples - 1) / chunkSamples);
+
+        List<Chunk> chunks = new ArrayList<>(chunkCount);
+        List<Future<Void>> futures = new ArrayList<>(chunkCount);
+        for (int i = 0; i < chunkCount; i++)
+        {
+            boolean last = i == chunkCount - 1;
+            long start = i * chunkSamples;
+            int preRoll = (int)Math.min(PRE_ROLL_FRAMES, start / samplesPerFrame);
+            long feedStart = start - (long)preRoll * samplesPerFrame;
+            long feedEnd = last ? totalSamples : Math.min(totalSamples, start + chunkSamples + (long)POST_ROLL_FRAMES * samplesPerFrame);
+            Chunk chunk = new Chunk(i, new File(mp3.getPath() + ".part" + i), channel, dataOffset, sampleRate, channels,
+                feedStart, feedEnd, preRoll, last ? Long.MAX_VALUE : chunkFrames);
+            chunks.add(chunk);
+            futures.add(executor.submit(chunk));
+        }
+
+        try
+        {
+            waitAll(futures);
+            if (canceled)
+            {
+                Logger.w(TAG, "编码已取消");
+                deleteParts(chunks);
+                return false;
+            }
+            stitch(chunks, mp3, totalSamples, samplesPerFrame);
+        }
+        catch (IOException | RuntimeException e)
+        {
+            deleteParts(chunks);
+            throw e;
+        }
+        Logger.d(TAG, "并行编码完成 %s 段，耗时 %sms", chunkCount, System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    /**
+     * 等待所有分段结束；任一段失败时取消其余分段，等它们退出后再抛出，避免分段文件仍被写入
+     */
+    private void waitAll(List<Future<Void>> futures)
+        throws IOException
+    {
+        IOException failure = null;
+        for (Future<Void> future : futures)
+        {
+            try
+            {
+                future.get();
+            }
+            catch (ExecutionException e)
+            {
+                canceled = true;
+                if (failure == null)
+                {
+                    Throwable cause = e.getCause();
+                    failure = cause instanceof IOException ? (IOException)cause : new IOException(cause);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                canceled = true;
+                Thread.currentThread().interrupt();
+                if (failure == null)
+                {
+                    failure = new IOException("interrupted");
+                }
+            }
+        }
+        if (failure != null)
+        {
+            throw failure;
+        }
+    }
+
+    private void stitch(List<Chunk> chunks, File mp3, long totalSamples, int samplesPerFrame)
+        throws IOException
+    {
+        long frameCount = 0;
+        long audioBytes = 0;
+        int crc = 0;
+        for (Chunk chunk : chunks)
+        {
+            frameCount += chunk.frameCount;
+            audioBytes += chunk.bytes;
+            crc = Crc16.combine(crc, chunk.crc, chunk.bytes);
+        }
+
+        List<File> files = new ArrayList<>(chunks.size() + 1);
+        byte[] tag = chunks.get(0).lameTag;
+        File tagFile = new File(mp3.getPath() + ".tag");
+        if (tag != null && tag.length > 0)
+        {
+            if (patchLameTag(tag, chunks, frameCount, audioBytes, crc, totalSamples, samplesPerFrame))
+            {
+                try (FileOutputStream os = new FileOutputStream(tagFile))
+                {
+                    os.write(tag);
+                }
+                files.add(tagFile);
+            }
+            else
+            {
+                Logger.w(TAG, "无法识别的 LAME 标签，输出不含标签帧");
+            }
+        }
+        for (Chunk chunk : chunks)
+        {
+            files.add(chunk.file);
+        }
+        if (!new FileMerger(mp3, files).merge())
+        {
+            tagFile.delete();
+            throw new IOException("merge failed: " + mp3.getAbsolutePath());
+        }
+    }
+
+    /**
+     * 把第一段的标签帧改写为整个文件的信息，字段位置见 LAME 的 VbrTag.c
+     *
+     * @return 标签结构无法识别时返回 false
+     */
+    private static boolean patchLameTag(byte[] tag, List<Chunk> chunks, long frameCount, long audioBytes,
+        int musicCrc, long totalSamples, int samplesPerFrame)
+    {
+        ByteBuffer buffer = ByteBuffer.wrap(tag);
+        int xing = 4 + Mp3FrameScanner.getSideInfoSize(buffer.getInt(0));
+        if (tag.length < xing + 120 + 36)
+        {
+            return false;
+        }
+        int id = buffer.getInt(xing);
+        if ((id != XING && id != INFO) || buffer.getInt(xing + 4) != 0x0F || buffer.getInt(xing + 120) != LAME)
+        {
+            return false;
+        }
+        long streamBytes = tag.length + audioBytes;
+        buffer.putInt(xing + 8, (int)frameCount);
+        buffer.putInt(xing + 12, (int)streamBytes);
+
+        // seek 表：第 i 项为第 i% 帧的位置占整个流的 1/256
+        int toc = xing + 16;
+        int entry = 0;
+        long frame = 0;
+        long offset = tag.length;
+        for (Chunk chunk : chunks)
+        {
+            for (int i = 0; i < chunk.frameSizeCount; i++, frame++)
+            {
+                while (entry < 100 && frame >= entry * frameCount / 100)
+                {
+                    tag[toc + entry++] = (byte)Math.min(255, offset * 256 / streamBytes);
+                }
+                offset += chunk.frameSizes[i];
+            }
+        }
+        while (entry < 100)
+        {
+            tag[toc + entry++] = (byte)255;
+        }
+
+        int lame = xing + 120;
+        int delay = ((tag[lame + 21] & 0xFF) << 4) | ((tag[lame + 22] & 0xFF) >>> 4);
+        long padding = Math.max(0, Math.min(0xFFF, frameCount * samplesPerFrame - delay - totalSamples));
+        tag[lame + 22] = (byte)(((delay & 0x0F) << 4) | (int)(padding >>> 8));
+        tag[lame + 23] = (byte)padding;
+        buffer.putInt(lame + 28, (int)streamBytes);
+        buffer.putShort(lame + 32, (short)musicCrc);
+        buffer.putShort(lame + 34, (short)Crc16.update(0, tag, 0, lame + 34));
+        return true;
+    }
+
+    private static void deleteParts(List<Chunk> chunks)
+    {
+        for (Chunk chunk : chunks)
+        {
+            chunk.file.delete();
+        }
+    }
+
+    /**
+     * 一个分段：编码 [feedStart, feedEnd) 的采样，丢弃前 dropFrames 帧后保留至多 keepFrames 帧
+     */
+    private class Chunk implements Callable<Void>
+    {
+        final int index;
+
+        final File file;
+
+        final FileChannel channel;
+
+        final long dataOffset;
+
+        final int sampleRate;
+
+        final int channels;
+
+        final long feedStart;
+
+        final long feedEnd;
+
+        final int dropFrames;
+
+        final long keepFrames;
+
+        /**
+         * 编码结果，在 Future.get() 之后读取
+         */
+        long frameCount;
+
+        long bytes;
+
+        int crc;
+
+        int[] frameSizes = new int[256];
+
+        int frameSizeCount;
+
+        byte[] lameTag;
+
+        private long outputFrames;
+
+        private boolean skipTagFrame;
+
+        Chunk(int index, File file, FileChannel channel, long dataOffset, int sampleRate, int channels, long feedStart,
+            long feedEnd, int dropFrames, long keepFrames)
+        {
+            this.index = index;
+            this.file = file;
+            this.channel = channel;
+            this.dataOffset = dataOffset;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.feedStart = feedStart;
+            this.feedEnd = feedEnd;
+            this.dropFrames = dropFrames;
+            this.keepFrames = keepFrames;
+            this.skipTagFrame = index == 0;
+        }
+
+        @Override
+        public Void call()
+            throws IOException
+        {
+            if (canceled)
+            {
+                return null;
+            }
+            Mp3Encoder.Options chunkOptions = new Mp3Encoder.Options(options).setOutSampleRate(sampleRate)
+                .setDisableReservoir(true)
+                .setWriteVbrTag(index == 0);
+            int frameBytes = channels * 2;
+            int blockSamples = BLOCK_FRAMES * (sampleRate >= 32000 ? 1152 : 576);
+            ByteBuffer pcm = ByteBuffer.allocateDirect(blockSamples * frameBytes).order(ByteOrder.nativeOrder());
+            // 帧头按大端解析
+            ByteBuffer pending = ByteBuffer.allocateDirect(blockSamples * 5 / 4 + 7200 + MAX_FRAME_SIZE * 2);
+
+            try (Mp3Encoder encoder = new Mp3Encoder(sampleRate, channels, chunkOptions);
+                FileOutputStream os = new FileOutputStream(file))
+            {
+                FileChannel out = os.getChannel();
+                long position = dataOffset + feedStart * frameBytes;
+                long end = dataOffset + feedEnd * frameBytes;
+                while (position < end)
+                {
+                    if (canceled)
+                    {
+                        return null;
+                    }
+                    pcm.clear();
+                    pcm.limit((int)Math.min(pcm.capacity(), end - position));
+                    while (pcm.hasRemaining())
+                    {
+                        if (channel.read(pcm, position + pcm.position()) < 0)
+                        {
+                            break;
+                        }
+                    }
+                    pcm.flip();
+                    int samples = pcm.remaining() / frameBytes;
+                    if (samples == 0)
+                    {
+                        break;
+                    }
+                    position += (long)samples * frameBytes;
+                    int result = channels == 2 ? encoder.encodeInterleaved(pcm, samples, pending)
+                        : encoder.encode(pcm, pcm, samples, pending);
+                    if (result < 0)
+                    {
+                        throw new IOException("lame encode error " + result);
+                    }
+                    drain(pending, out);
+                }
+                if (encoder.flush(pending) < 0)
+                {
+                    throw new IOException("lame flush error");
+                }
+                drain(pending, out);
+                if (pending.position() != 0)
+                {
+                    throw new IOException("incomplete frame at end of chunk " + index);
+                }
+                if (index == 0)
+                {
+                    lameTag = encoder.getLameTagFrame();
+                }
+            }
+            if (keepFrames != Long.MAX_VALUE && frameCount != keepFrames)
+            {
+                throw new IOException("chunk " + index + " produced " + frameCount + " frames, expected " + keepFrames);
+            }
+            return null;
+        }
+
+        /**
+         * 从 pending 中取出完整的帧，丢弃重叠帧后写入分段文件，不完整的帧留到下次
+         */
+        private void drain(ByteBuffer pending, FileChannel out)
+            throws IOException
+        {
+            int limit = pending.position();
+            int position = 0;
+            int runStart = -1;
+            int runEnd = -1;
+            while (limit - position >= 4)
+            {
+                int header = pending.getInt(position);
+                if (!Mp3FrameScanner.isValidHeader(header))
+                {
+                    throw new IOException("invalid frame header in chunk " + index);
+                }
+                int length = Mp3FrameScanner.getFrameLength(header);
+                if (limit - position < length)
+                {
+                    break;
+                }
+                if (skipTagFrame)
+                {
+                    // 占位的标签帧，结束时由 getLameTagFrame() 取得
+                    skipTagFrame = false;
+                }
+                else
+                {
+                    long frame = outputFrames++;
+                    if (frame >= dropFrames && frame - dropFrames < keepFrames)
+                    {
+                        if (runStart < 0)
+                        {
+                            runStart = position;
+                        }
+                        runEnd = position + length;
+                        addFrame(length);
+                        crc = Crc16.update(crc, pending, position, length);
+                    }
+                }
+                position += length;
+            }
+            if (runStart >= 0)
+            {
+                pending.limit(runEnd).position(runStart);
+                while (pending.hasRemaining())
+                {
+                    out.write(pending);
+                }
+            }
+            pending.limit(limit).position(position);
+            pending.compact();
+        }
+
+        private void addFrame(int length)
+        {
+            if (frameSizeCount == frameSizes.length)
+            {
+                frameSizes = Arrays.copyOf(frameSizes, frameSizeCount * 2);
+            }
+            frameSizes[frameSizeCount++] = length;
+            frameCount++;
+            bytes += length;
+        }
+    }
+}
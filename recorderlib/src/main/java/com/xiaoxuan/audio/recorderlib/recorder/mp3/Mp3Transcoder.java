@@ -0,0 +1,606 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import com.xiaoxuan.audio.recorderlib.recorder.wav.WavUtils;
+import com.xiaoxuan.audio.recorderlib.utils.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WAV/PCM 批量转 MP3 队列，与录音流程和 RecordService 的配置无关
+ * <p>
+ * 固定数量的工作线程按优先级从队列取任务，每个线程为当前文件创建自己的 {@link Mp3Encoder}，
+ * 读写缓冲区在线程内复用。任务可单独取消，转码器统计所有线程合计的吞吐量。
+ */
+public class Mp3Transcoder
+{
+    private static final String TAG = Mp3Transcoder.class.getSimpleName();
+
+    /**
+     * 每次读取并编码的采样数（每个声道）
+     */
+    private static final int BLOCK_SAMPLES = 1152 * 32;
+
+    /**
+     * 队列为空时工作线程检查是否已关闭的间隔 ms
+     */
+    private static final long IDLE_POLL_MS = 200;
+
+    public enum TaskState
+    {
+        PENDING,
+        RUNNING,
+        SUCCEEDED,
+        FAILED,
+        CANCELED
+    }
+
+    private final PriorityBlockingQueue<Task> queue = new PriorityBlockingQueue<>();
+
+    /**
+     * 添加后尚未结束的任务，包括已被工作线程取出、还没有开始转码的任务
+     */
+    private final Set<Task> unfinished = ConcurrentHashMap.newKeySet();
+
+    private final Worker[] workers;
+
+    private final Mp3Encoder.Options options;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final AtomicLong encodedBytes = new AtomicLong();
+
+    private final AtomicLong encodedAudioUs = new AtomicLong();
+
+    private volatile OnTranscodeListener onTranscodeListener;
+
+    private volatile boolean shutdown;
+
+    /**
+     * 正在转码的任务数以及有任务在转码的累计时间，用于计算吞吐量
+     */
+    private int activeCount;
+
+    private long busySince;
+
+    private long busyMs;
+
+    /**
+     * @param workers 工作线程数，即同时转码的文件数
+     * @param options 编码参数，创建后不再受外部修改影响
+     */
+    public Mp3Transcoder(int workers, Mp3Encoder.Options options)
+    {
+        this.options = new Mp3Encoder.Options(options);
+        this.workers = new Worker[Math.max(1, workers)];
+        for (int i = 0; i < this.workers.length; i++)
+        {
+            this.workers[i] = new Worker(i);
+            this.workers[i].start();
+        }
+    }
+
+    public Mp3Transcoder setOnTranscodeListener(OnTranscodeListener onTranscodeListener)
+    {
+        this.onTranscodeListener = onTranscodeListener;
+        return this;
+    }
+
+    /**
+     * 添加 WAV 文件，只支持 16 位 PCM 格式
+     *
+     * @param priority 越大越先处理，相同优先级按添加顺序
+     */
+    public Task submitWav(File wav, File mp3, int priority)
+    {
+        return submit(new Task(wav, mp3, priority, 0, 0));
+    }
+
+    public Task submitWav(File wav, File mp3)
+    {
+        return submitWav(wav, mp3, 0);
+    }
+
+    /**
+     * 添加 16 位本机字节序的 PCM 文件，双声道为交错排列
+     *
+     * @param priority 越大越先处理，相同优先级按添加顺序
+     */
+    public Task submitPcm(File pcm, File mp3, int sampleRate, int channels, int priority)
+    {
+        if (sampleRate <= 0 || (channels != 1 && channels != 2))
+        {
+            throw new IllegalArgumentException("sampleRate " + sampleRate + ", channels " + channels);
+        }
+        return submit(new Task(pcm, mp3, priority, sampleRate, channels));
+    }
+
+    private Task submit(Task task)
+    {
+        if (shutdown)
+        {
+            throw new IllegalStateException("Mp3Transcoder is shut down");
+        }
+        unfinished.add(task);
+        queue.add(task);
+        return task;
+    }
+
+    /**
+     * 取消所有排队中和正在转码的任务
+     */
+    public void cancelAll()
+    {
+        // 任务从添加到结束都在集合中，不会错过刚从队列取出的任务
+        for (Task task : unfinished)
+        {
+            task.cancel();
+        }
+    }
+
+    /**
+     * 不再接受新任务，已添加的任务处理完后工作线程退出；需要立即停止时先调用 {@link #cancelAll()}
+     */
+    public void shutdown()
+    {
+        shutdown = true;
+    }
+
+    /**
+     * 等待工作线程退出
+     *
+     * @return 是否在超时前全部退出
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+        throws InterruptedException
+    {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Worker worker : workers)
+        {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0)
+            {
+                return !isAlive();
+            }
+            worker.join(remaining);
+        }
+        return !isAlive();
+    }
+
+    private boolean isAlive()
+    {
+        for (Worker worker : workers)
+        {
+            if (worker.isAlive())
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getPendingCount()
+    {
+        return queue.size();
+    }
+
+    /**
+     * 所有任务累计读取的 PCM 字节数
+     */
+    public long getEncodedBytes()
+    {
+        return encodedBytes.get();
+    }
+
+    /**
+     * 所有任务累计编码的音频时长 ms
+     */
+    public long getEncodedDurationMs()
+    {
+        return encodedAudioUs.get() / 1000;
+    }
+
+    /**
+     * 合计吞吐量：有任务在转码期间，每秒实际时间编码的音频秒数
+     */
+    public float getSpeed()
+    {
+        long elapsed;
+        synchronized (this)
+        {
+            elapsed = busyMs + (activeCount > 0 ? System.currentTimeMillis() - busySince : 0);
+        }
+        return elapsed <= 0 ? 0 : encodedAudioUs.get() / 1000f / elapsed;
+    }
+
+    private synchronized void onTaskStart()
+    {
+        if (activeCount++ == 0)
+        {
+            busySince = System.currentTimeMillis();
+        }
+    }
+
+    private synchronized void onTaskEnd()
+    {
+        if (--activeCount == 0)
+        {
+            busyMs += System.currentTimeMillis() - busySince;
+        }
+    }
+
+    private void notifyProgress(Task task)
+    {
+        OnTranscodeListener listener = onTranscodeListener;
+        if (listener != null)
+        {
+            listener.onProgress(task, task.processedBytes, task.totalBytes);
+        }
+    }
+
+    private void notifyFinish(Task task)
+    {
+        OnTranscodeListener listener = onTranscodeListener;
+        if (listener != null)
+        {
+            listener.onFinish(task);
+        }
+    }
+
+    /**
+     * 一个转码任务
+     */
+    public class Task implements Comparable<Task>
+    {
+        private final File source;
+
+        private final File dest;
+
+        private final int priority;
+
+        private final long order;
+
+        /**
+         * PCM 文件的格式，WAV 文件为 0，从文件头读取
+         */
+        private final int pcmSampleRate;
+
+        private final int pcmChannels;
+
+        private TaskState state = TaskState.PENDING;
+
+        private volatile boolean canceled;
+
+        private volatile long processedBytes;
+
+        private volatile long totalBytes;
+
+        private volatile long startTime;
+
+        private volatile long endTime;
+
+        private Exception error;
+
+        Task(File source, File dest, int priority, int pcmSampleRate, int pcmChannels)
+        {
+            this.source = source;
+            this.dest = dest;
+            this.priority = priority;
+            this.order = sequence.getAndIncrement();
+            this.pcmSampleRate = pcmSampleRate;
+            this.pcmChannels = pcmChannels;
+        }
+
+        public File getSource()
+        {
+            return source;
+        }
+
+        public File getDest()
+        {
+            return dest;
+        }
+
+        public int getPriority()
+        {
+            return priority;
+        }
+
+        public synchronized TaskState getState()
+        {
+            return state;
+        }
+
+        /**
+         * 失败原因，只在 {@link TaskState#FAILED} 时有值
+         */
+        public synchronized Exception getError()
+        {
+            return error;
+        }
+
+        public long getProcessedBytes()
+        {
+            return processedBytes;
+        }
+
+        /**
+         * 音频数据总字节数，开始转码并读取文件头后才有值
+         */
+        public long getTotalBytes()
+        {
+            return totalBytes;
+        }
+
+        /**
+         * 已转码的时间 ms，未开始时为 0
+         */
+        public long getElapsedMs()
+        {
+            long start = startTime;
+            if (start == 0)
+            {
+                return 0;
+            }
+            long end = endTime;
+            return (end == 0 ? System.currentTimeMillis() : end) - start;
+        }
+
+        /**
+         * 取消任务：排队中的任务直接移出队列，正在转码的任务在处理完当前数据块后停止并删除输出文件
+         */
+        public void cancel()
+        {
+            canceled = true;
+            synchronized (this)
+            {
+                if (state != TaskState.PENDING)
+                {
+                    return;
+                }
+                state = TaskState.CANCELED;
+            }
+            queue.remove(this);
+            unfinished.remove(this);
+            notifyFinish(this);
+        }
+
+        private synchronized boolean start()
+        {
+            if (state != TaskState.PENDING)
+            {
+                return false;
+            }
+            state = TaskState.RUNNING;
+            startTime = System.currentTimeMillis();
+            return true;
+        }
+
+        private synchronized void finish(TaskState state, Exception error)
+        {
+            this.state = state;
+            this.error = error;
+            this.endTime = System.currentTimeMillis();
+        }
+
+        @Override
+        public int compareTo(Task other)
+        {
+            if (priority != other.priority)
+            {
+                return priority > other.priority ? -1 : 1;
+            }
+            return Long.compare(order, other.order);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Task{" + "source=" + source + ", priority=" + priority + ", state=" + getState() + '}';
+        }
+    }
+
+    private class Worker extends Thread
+    {
+        private final ByteBuffer pcmBuffer = ByteBuffer.allocateDirect(BLOCK_SAMPLES * 4).order(ByteOrder.nativeOrder());
+
+        private final ByteBuffer mp3Buffer = ByteBuffer.allocateDirect(BLOCK_SAMPLES * 5 / 4 + 7200);
+
+        /**
+         * 当前任务是否已打开并清空目标文件，之前失败时目标文件未被改动，不能删除
+         */
+        private boolean destOpened;
+
+        Worker(int index)
+        {
+            super(TAG + "-" + index);
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                Task task;
+                try
+                {
+                    task = queue.poll(IDLE_POLL_MS, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                if (task == null)
+                {
+                    if (shutdown)
+                    {
+                        return;
+                    }
+                    continue;
+                }
+                if (!task.start())
+                {
+                    continue;
+                }
+                destOpened = false;
+                onTaskStart();
+                TaskState state = TaskState.FAILED;
+                Exception error = null;
+                try
+                {
+                    state = transcode(task) ? TaskState.SUCCEEDED : TaskState.CANCELED;
+                }
+                catch (IOException | RuntimeException e)
+                {
+                    Logger.e(e, TAG, "转码失败：%s", task.source.getAbsolutePath());
+                    error = e;
+                }
+                finally
+                {
+                    // Error（如 native 库加载失败）继续抛出结束本线程，但任务状态和计数仍要收尾
+                    onTaskEnd();
+                    if (state != TaskState.SUCCEEDED && destOpened)
+                    {
+                        task.dest.delete();
+                    }
+                    task.finish(state, error);
+                    unfinished.remove(task);
+                    notifyFinish(task);
+                }
+            }
+        }
+
+        /**
+         * @return 是否完成，被取消时返回 false
+         */
+        private boolean transcode(Task task)
+            throws IOException
+        {
+            try (FileInputStream in = new FileInputStream(task.source))
+            {
+                FileChannel channel = in.getChannel();
+                long offset = 0;
+                long length = channel.size();
+                int sampleRate = task.pcmSampleRate;
+                int channels = task.pcmChannels;
+                if (sampleRate == 0)
+                {
+                    int[] format = WavUtils.findFormatChunk(channel);
+                    long[] data = WavUtils.findDataChunk(channel);
+                    if (format == null || data == null)
+                    {
+                        throw new IOException("not a wav file: " + task.source.getAbsolutePath());
+                    }
+                    if (format[0] != 1 || format[3] != 16 || (format[1] != 1 && format[1] != 2))
+                    {
+                        throw new IOException("unsupported wav format " + format[0] + ", channels " + format[1]
+                            + ", bits " + format[3]);
+                    }
+                    channels = format[1];
+                    sampleRate = format[2];
+                    offset = data[0];
+                    length = data[1];
+                }
+                int frameBytes = channels * 2;
+                task.totalBytes = length - length % frameBytes;
+
+                try (Mp3Encoder encoder = new Mp3Encoder(sampleRate, channels, options);
+                    RandomAccessFile raf = new RandomAccessFile(task.dest, "rw"))
+                {
+                    raf.setLength(0);
+                    destOpened = true;
+                    FileChannel out = raf.getChannel();
+                    long position = offset;
+                    long end = offset + task.totalBytes;
+                    while (position < end)
+                    {
+                        if (task.canceled)
+                        {
+                            return false;
+                        }
+                        pcmBuffer.clear();
+                        pcmBuffer.limit((int)Math.min(BLOCK_SAMPLES * frameBytes, end - position));
+                        while (pcmBuffer.hasRemaining())
+                        {
+                            if (channel.read(pcmBuffer, position + pcmBuffer.position()) < 0)
+                            {
+                                break;
+                            }
+                        }
+                        pcmBuffer.flip();
+                        int samples = pcmBuffer.remaining() / frameBytes;
+                        if (samples == 0)
+                        {
+                            break;
+                        }
+                        mp3Buffer.clear();
+                        int result = channels == 2 ? encoder.encodeInterleaved(pcmBuffer, samples, mp3Buffer)
+                            : encoder.encode(pcmBuffer, pcmBuffer, samples, mp3Buffer);
+                        if (result < 0)
+                        {
+                            throw new IOException("lame encode error " + result);
+                        }
+                        write(out);
+
+                        int bytes = samples * frameBytes;
+                        position += bytes;
+                        task.processedBytes += bytes;
+                        encodedBytes.addAndGet(bytes);
+                        encodedAudioUs.addAndGet(samples * 1000000L / sampleRate);
+                        notifyProgress(task);
+                    }
+                    mp3Buffer.clear();
+                    if (encoder.flush(mp3Buffer) < 0)
+                    {
+                        throw new IOException("lame flush error");
+                    }
+                    write(out);
+                    byte[] lameTag = encoder.getLameTagFrame();
+                    if (lameTag.length > 0)
+                    {
+                        // 开头是编码器写入的占位帧，长度相同
+                        out.write(ByteBuffer.wrap(lameTag), 0);
+                    }
+                }
+            }
+            return true;
+        }
+
+        private void write(FileChannel out)
+            throws IOException
+        {
+            mp3Buffer.flip();
+            while (mp3Buffer.hasRemaining())
+            {
+                out.write(mp3Buffer);
+            }
+        }
+    }
+
+    public interface OnTranscodeListener
+    {
+        /**
+         * 在工作线程中回调，每编码一个数据块一次
+         *
+         * @param processed 已读取的音频字节数
+         * @param total 音频数据总字节数
+         */
+        void onProgress(Task task, long processed, long total);
+
+        /**
+         * 任务结束，通过 {@link Task#getState()} 区分成功、失败和取消；
+         * 排队中被取消的任务在调用 {@link Task#cancel()} 的线程中回调，其余在工作线程中回调
+         */
+        void onFinish(Task task);
+    }
+}
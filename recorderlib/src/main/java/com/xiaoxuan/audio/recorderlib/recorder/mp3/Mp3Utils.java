@@ -1,12 +1,10 @@
 package com.xiaoxuan.audio.recorderlib.recorder.mp3;
 
-import android.media.MediaExtractor;
-import android.media.MediaFormat;
-
 import com.xiaoxuan.audio.recorderlib.recorder.RecordConfig;
 import com.xiaoxuan.audio.recorderlib.utils.FileUtils;
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
+import java.io.File;
 import java.io.IOException;
 
 /**
@@ -17,6 +15,8 @@ public class Mp3Utils {
 
     /**
      * 获取mp3音频的总时长 单位：ms
+     * <p>
+     * 有 Xing/Info/VBRI 头时只读取文件开头，否则逐帧扫描帧头，见 {@link Mp3FrameScanner}
      *
      * @param mp3FilePath MP3文件路径
      * @return 时长
@@ -28,20 +28,22 @@ public class Mp3Utils {
         if (!mp3FilePath.endsWith(RecordConfig.RecordFormat.MP3.getExtension())) {
             return 0;
         }
-        MediaExtractor mex = null;
+        Mp3Info info = getInfo(new File(mp3FilePath), false);
+        return info == null ? 0 : info.getDurationMs();
+    }
+
+    /**
+     * 解析mp3文件的时长、码率等信息
+     *
+     * @param buildSeekIndex 是否逐帧扫描生成精确的 seek 索引
+     * @return 不是有效的mp3文件时返回 null
+     */
+    public static Mp3Info getInfo(File file, boolean buildSeekIndex) {
         try {
-            mex = new MediaExtractor();
-            mex.setDataSource(mp3FilePath);
-            MediaFormat mf = mex.getTrackFormat(0);
-            long duration = mf.getLong(MediaFormat.KEY_DURATION) / 1000L;
-            return duration;
+            return Mp3FrameScanner.scan(file, buildSeekIndex);
         } catch (IOException e) {
             Logger.e(e, TAG, e.getMessage());
-        } finally {
-            if (mex != null) {
-                mex.release();
-            }
         }
-        return 0;
+        return null;
     }
 }
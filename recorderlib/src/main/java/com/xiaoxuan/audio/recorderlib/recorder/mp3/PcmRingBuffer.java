@@ -0,0 +1,225 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 单生产者/单消费者的无锁环形缓冲区，由预先分配的 direct ByteBuffer 分块组成
+ * <p>
+ * 分块为本机字节序的 16 位 PCM，可直接交给 native 编码器读取。
+ * 采集线程通过 {@link #offer} 复制数据到空闲分块，不分配内存也不竞争锁，满时丢弃并计数；
+ * 编码线程通过 {@link #peek}/{@link #release} 依次处理，积累到 wakeupBatch 个分块才唤醒一次，
+ * 每次唤醒可处理多个分块。
+ */
+public class PcmRingBuffer
+{
+    private final ByteBuffer[] slabs;
+
+    private final int[] lengths;
+
+    private final int slabSize;
+
+    private final int mask;
+
+    private final int wakeupBatch;
+
+    /**
+     * 下一个读取位置，只由消费者写入
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * 下一个写入位置，只由生产者写入
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    private volatile Thread consumer;
+
+    private volatile boolean parked;
+
+    /**
+     * 以下统计只由生产者写入
+     */
+    private volatile long highWater;
+
+    private volatile long dropped;
+
+    /**
+     * @param capacity 分块数量，向上取整为 2 的幂
+     * @param slabSize 每个分块的采样数，大于该值的数据会拆分到多个分块
+     * @param wakeupBatch 消费者等待时，积累多少个分块才唤醒
+     */
+    public PcmRingBuffer(int capacity, int slabSize, int wakeupBatch)
+    {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.slabs = new ByteBuffer[size];
+        for (int i = 0; i < size; i++)
+        {
+            slabs[i] = ByteBuffer.allocateDirect(slabSize * 2).order(ByteOrder.nativeOrder());
+        }
+        this.lengths = new int[size];
+        this.slabSize = slabSize;
+        this.mask = size - 1;
+        this.wakeupBatch = Math.max(1, Math.min(wakeupBatch, size));
+    }
+
+    /**
+     * 生产者写入 src 从 position 到 limit 的数据（本机字节序），不改变 src 的 position，
+     * 空间不足时丢弃放不下的部分
+     *
+     * @return 是否全部写入
+     */
+    public boolean offer(ByteBuffer src)
+    {
+        int start = src.position();
+        int limit = src.limit();
+        int offset = start;
+        int length = src.remaining() / 2;
+        long t = tail.get();
+        long h = head.get();
+        while (length > 0)
+        {
+            if (t - h > mask)
+            {
+                h = head.get();
+                if (t - h > mask)
+                {
+                    dropped += (length + slabSize - 1) / slabSize;
+                    break;
+                }
+            }
+            int index = (int)(t & mask);
+            int count = Math.min(length, slabSize);
+            ByteBuffer slab = slabs[index];
+            src.limit(offset + count * 2).position(offset);
+            slab.clear();
+            slab.put(src);
+            slab.flip();
+            lengths[index] = count;
+            offset += count * 2;
+            length -= count;
+            t++;
+            tail.lazySet(t);
+        }
+        src.limit(limit).position(start);
+        long size = t - h;
+        if (size > highWater)
+        {
+            highWater = size;
+        }
+        if (parked && size >= wakeupBatch)
+        {
+            LockSupport.unpark(consumer);
+        }
+        return length <= 0;
+    }
+
+    /**
+     * 消费者获取最早的分块，position 为 0，limit 为有效数据末尾，处理完后调用 {@link #release()}
+     *
+     * @return 没有数据时返回 null
+     */
+    public ByteBuffer peek()
+    {
+        long h = head.get();
+        if (h == tail.get())
+        {
+            return null;
+        }
+        return slabs[(int)(h & mask)];
+    }
+
+    /**
+     * {@link #peek()} 返回分块中的有效采样数
+     */
+    public int peekLength()
+    {
+        return lengths[(int)(head.get() & mask)];
+    }
+
+    /**
+     * 消费者归还最早的分块
+     */
+    public void release()
+    {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * 消费者等待数据，已有 wakeupBatch 个分块时立即返回
+     *
+     * @param timeoutMs 最长等待时间，也是数据不足一批时的最大延迟
+     */
+    public void await(long timeoutMs)
+    {
+        consumer = Thread.currentThread();
+        parked = true;
+        if (size() < wakeupBatch)
+        {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(timeoutMs));
+        }
+        parked = false;
+    }
+
+    /**
+     * 立即唤醒消费者，如停止时调用
+     */
+    public void wakeup()
+    {
+        Thread thread = consumer;
+        if (thread != null)
+        {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    public boolean isEmpty()
+    {
+        return head.get() == tail.get();
+    }
+
+    /**
+     * 当前占用的分块数
+     */
+    public int size()
+    {
+        return (int)(tail.get() - head.get());
+    }
+
+    /**
+     * 剩余可写入的分块数，生产者调用时结果只会偏小
+     */
+    public int remainingCapacity()
+    {
+        return capacity() - size();
+    }
+
+    public int capacity()
+    {
+        return mask + 1;
+    }
+
+    public int getSlabSize()
+    {
+        return slabSize;
+    }
+
+    /**
+     * 占用分块数的历史最大值
+     */
+    public long getHighWater()
+    {
+        return highWater;
+    }
+
+    /**
+     * 因缓冲区已满而丢弃的分块数
+     */
+    public long getDropped()
+    {
+        return dropped;
+    }
+}
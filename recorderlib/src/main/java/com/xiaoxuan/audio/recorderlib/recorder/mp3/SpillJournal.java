@@ -0,0 +1,128 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 编码缓冲区溢出时使用的只追加日志文件：生产者在末尾追加 PCM，消费者按顺序读回，
+ * 直接在调用方的 ByteBuffer 与文件之间传输，不经过中间数组
+ * <p>
+ * 读写均为定位 I/O，互不影响文件指针；写入位置只由生产者更新，读取位置只由消费者更新。
+ * 文件在首次写入时才创建，消费者追上后由生产者清空复用，关闭时删除。
+ */
+class SpillJournal implements Closeable
+{
+    private final File file;
+
+    private FileChannel channel;
+
+    private volatile long written;
+
+    private volatile long read;
+
+    private volatile long total;
+
+    SpillJournal(File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * 生产者追加 src 从 position 到 limit 的数据，不改变 src 的 position
+     */
+    void append(ByteBuffer src)
+        throws IOException
+    {
+        if (channel == null)
+        {
+            channel = new RandomAccessFile(file, "rw").getChannel();
+            channel.truncate(0);
+        }
+        int start = src.position();
+        long position = written;
+        while (src.hasRemaining())
+        {
+            position += channel.write(src, position);
+        }
+        src.position(start);
+        total += position - written;
+        written = position;
+    }
+
+    /**
+     * 生产者在消费者读完全部数据后调用，清空文件并从头写入，避免日志在整个录音过程中只增不减
+     */
+    void reset()
+        throws IOException
+    {
+        // 先清写入位置，期间 hasPending 始终为 false，消费者不会读取
+        written = 0;
+        read = 0;
+        if (channel != null)
+        {
+            channel.truncate(0);
+        }
+    }
+
+    /**
+     * 是否还有未读回的数据
+     */
+    boolean hasPending()
+    {
+        return read < written;
+    }
+
+    /**
+     * 消费者按写入顺序读回采样，写入 dest 的 position 到 limit 之间，完成后 dest 已 flip
+     *
+     * @return 读取的字节数，没有数据时为 0
+     */
+    int read(ByteBuffer dest)
+        throws IOException
+    {
+        dest.clear();
+        long end = written;
+        long position = read;
+        if (position >= end)
+        {
+            dest.limit(0);
+            return 0;
+        }
+        dest.limit((int)Math.min(dest.capacity(), end - position) & ~1);
+        while (dest.hasRemaining())
+        {
+            if (channel.read(dest, position + dest.position()) < 0)
+            {
+                break;
+            }
+        }
+        dest.flip();
+        int count = dest.limit();
+        read = position + count;
+        return count;
+    }
+
+    /**
+     * 累计写入的字节数，不随 {@link #reset()} 清零
+     */
+    long getWritten()
+    {
+        return total;
+    }
+
+    @Override
+    public void close()
+        throws IOException
+    {
+        if (channel != null)
+        {
+            channel.close();
+            channel = null;
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,140 @@
+package com.xiaoxuan.audio.recorderlib.recorder.wav;
+
+import com.xiaoxuan.audio.PCMGainer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 直接写入 WAV 文件：先预留 44 字节文件头，PCM 数据顺序追加在其后，
+ * 暂停或停止时通过定位写入更新 RIFF 与 data 的长度，无需临时文件和合并。
+ * <p>
+ * 非线程安全，写入与 {@link #updateHeader()} / {@link #close()} 不可并发调用。
+ */
+public class WavFileWriter implements Closeable
+{
+    public static final int HEADER_SIZE = 44;
+
+    /**
+     * RIFF chunk size 字段位置
+     */
+    private static final int RIFF_SIZE_OFFSET = 4;
+
+    /**
+     * data chunk size 字段位置
+     */
+    private static final int DATA_SIZE_OFFSET = 40;
+
+    private final File file;
+
+    private final int sampleBits;
+
+    private final PCMGainer gainer;
+
+    private final RandomAccessFile raf;
+
+    private final FileChannel channel;
+
+    private final ByteBuffer sizeBuffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+
+    private long dataSize;
+
+    /**
+     * @param file 输出文件，已存在时覆盖
+     * @param sampleRate 采样率
+     * @param channels 声道数
+     * @param sampleBits 位宽
+     * @param gainer 写入时统计峰值，关闭时就地应用增益；为 null 或位宽不是 16 时不做处理
+     */
+    public WavFileWriter(File file, int sampleRate, int channels, int sampleBits, PCMGainer gainer)
+        throws IOException
+    {
+        this.file = file;
+        this.sampleBits = sampleBits;
+        this.gainer = sampleBits == 16 ? gainer : null;
+        this.raf = new RandomAccessFile(file, "rw");
+        this.channel = raf.getChannel();
+        raf.setLength(0);
+        raf.write(WavUtils.generateWavFileHeader(HEADER_SIZE, sampleRate, channels, sampleBits));
+    }
+
+    public File getFile()
+    {
+        return file;
+    }
+
+    /**
+     * 已写入的 PCM 数据长度
+     */
+    public long getDataSize()
+    {
+        return dataSize;
+    }
+
+    /**
+     * 追加 PCM 数据
+     */
+    public void write(byte[] data, int offset, int length)
+        throws IOException
+    {
+        if (length <= 0)
+        {
+            return;
+        }
+        if (gainer != null)
+        {
+            gainer.track(data, offset, length);
+        }
+        raf.write(data, offset, length);
+        dataSize += length;
+    }
+
+    /**
+     * 按当前数据长度更新文件头，如暂停时调用，之后文件即为完整可播放的 WAV
+     */
+    public void updateHeader()
+        throws IOException
+    {
+        long riffSize = dataSize + HEADER_SIZE - 8;
+        writeSize(RIFF_SIZE_OFFSET, riffSize > 0xffffffffL ? 0xffffffffL : riffSize);
+        writeSize(DATA_SIZE_OFFSET, dataSize > 0xffffffffL ? 0xffffffffL : dataSize);
+    }
+
+    private void writeSize(long position, long value)
+        throws IOException
+    {
+        sizeBuffer.clear();
+        sizeBuffer.putInt((int)value);
+        sizeBuffer.flip();
+        while (sizeBuffer.hasRemaining())
+        {
+            channel.write(sizeBuffer, position + sizeBuffer.position());
+        }
+    }
+
+    /**
+     * 应用增益、更新文件头并关闭
+     */
+    @Override
+    public void close()
+        throws IOException
+    {
+        try
+        {
+            if (gainer != null)
+            {
+                gainer.applyInPlace(channel, HEADER_SIZE, dataSize);
+            }
+            updateHeader();
+        }
+        finally
+        {
+            raf.close();
+        }
+    }
+}
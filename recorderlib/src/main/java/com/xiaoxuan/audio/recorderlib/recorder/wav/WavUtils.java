@@ -10,6 +10,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 
 /**
  * pcm 转 wav 工具类 http://soundfile.sapp.org/doc/WaveFormat/
@@ -151,6 +154,112 @@ public class WavUtils
         return buffer;
     }
     
+    /**
+     * 查找 data 块，跳过 LIST 等其他块
+     *
+     * @param channel wav 文件
+     * @return {data 起始位置, data 字节数}，不是 wav 文件时返回 null；长度不超过文件实际大小
+     */
+    public static long[] findDataChunk(FileChannel channel)
+        throws IOException
+    {
+        // "data"
+        long[] chunk = findChunk(channel, 0x61746164);
+        if (chunk == null)
+        {
+            return null;
+        }
+        // 录音中断时长度可能未更新
+        long available = channel.size() - chunk[0];
+        if (chunk[1] == 0 || chunk[1] > available)
+        {
+            chunk[1] = available;
+        }
+        return chunk;
+    }
+    
+    /**
+     * 读取 fmt 块
+     *
+     * @param channel wav 文件
+     * @return {audioFormat, 声道数, 采样率, 位宽}，audioFormat 1 为 PCM；不是 wav 文件时返回 null
+     */
+    public static int[] findFormatChunk(FileChannel channel)
+        throws IOException
+    {
+        // "fmt "
+        long[] chunk = findChunk(channel, 0x20746D66);
+        if (chunk == null || chunk[1] < 16)
+        {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, buffer, chunk[0]) < 16)
+        {
+            return null;
+        }
+        int audioFormat = buffer.getShort(0) & 0xffff;
+        if (audioFormat == 0xfffe && chunk[1] >= 26)
+        {
+            // WAVE_FORMAT_EXTENSIBLE，实际格式在 SubFormat 的前两个字节
+            ByteBuffer subFormat = ByteBuffer.allocate(2).order(ByteOrder.LITTLE_ENDIAN);
+            if (readFully(channel, subFormat, chunk[0] + 24) == 2)
+            {
+                audioFormat = subFormat.getShort(0) & 0xffff;
+            }
+        }
+        return new int[] {audioFormat, buffer.getShort(2) & 0xffff, buffer.getInt(4), buffer.getShort(14) & 0xffff};
+    }
+    
+    /**
+     * 按 RIFF 结构依次查找指定块
+     *
+     * @return {块数据起始位置, 块头中记录的长度}，找不到时返回 null
+     */
+    private static long[] findChunk(FileChannel channel, int chunkId)
+        throws IOException
+    {
+        long fileSize = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+        if (readFully(channel, buffer, 0) < 12 || buffer.getInt(0) != 0x46464952 || buffer.getInt(8) != 0x45564157)
+        {
+            // "RIFF" ... "WAVE"
+            return null;
+        }
+        long position = 12;
+        buffer.limit(8);
+        while (position + 8 <= fileSize)
+        {
+            if (readFully(channel, buffer, position) < 8)
+            {
+                return null;
+            }
+            int id = buffer.getInt(0);
+            long size = buffer.getInt(4) & 0xffffffffL;
+            position += 8;
+            if (id == chunkId)
+            {
+                return new long[] {position, size};
+            }
+            position += size + (size & 1);
+        }
+        return null;
+    }
+    
+    private static int readFully(FileChannel channel, ByteBuffer buffer, long position)
+        throws IOException
+    {
+        buffer.position(0);
+        while (buffer.hasRemaining())
+        {
+            if (channel.read(buffer, position + buffer.position()) < 0)
+            {
+                break;
+            }
+        }
+        return buffer.position();
+    }
+    
     /**
      * 获取wav音频时长 ms
      *
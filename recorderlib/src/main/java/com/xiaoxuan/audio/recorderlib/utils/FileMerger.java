@@ -0,0 +1,196 @@
+package com.xiaoxuan.audio.recorderlib.utils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+/**
+ * 文件合并：基于 FileChannel.transferTo 零拷贝追加
+ * <p>
+ * 第一个分段能直接重命名为输出文件时，其余分段原地追加在其后，第一个分段不再复制；
+ * 按块传输，每块之后回调进度并检查是否取消。
+ */
+public class FileMerger implements SegmentMerger
+{
+    private static final String TAG = FileMerger.class.getSimpleName();
+
+    /**
+     * 每次 transferTo 的最大字节数
+     */
+    private static final long TRANSFER_CHUNK = 8 * 1024 * 1024;
+
+    private final File dest;
+
+    private final List<File> files;
+
+    private OnProgressListener onProgressListener;
+
+    private volatile boolean canceled;
+
+    /**
+     * @param dest 输出文件，已存在时覆盖
+     * @param files 按顺序合并的分段，合并成功后删除
+     */
+    public FileMerger(File dest, List<File> files)
+    {
+        this.dest = dest;
+        this.files = files;
+    }
+
+    @Override
+    public FileMerger setOnProgressListener(OnProgressListener onProgressListener)
+    {
+        this.onProgressListener = onProgressListener;
+        return this;
+    }
+
+    @Override
+    public void cancel()
+    {
+        canceled = true;
+    }
+
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    /**
+     * 在调用线程中合并
+     *
+     * @return 是否成功；取消或失败时本次追加的部分会被截断，分段全部保留，可再次调用 merge。
+     *         第一个分段已重命名为输出文件时，列表中的第一项替换为输出文件
+     */
+    @Override
+    public boolean merge()
+    {
+        if (dest == null || files == null || files.isEmpty())
+        {
+            return false;
+        }
+        long total = 0;
+        for (File file : files)
+        {
+            total += file.length();
+        }
+
+        int start = 0;
+        long merged = 0;
+        File first = files.get(0);
+        if (!first.equals(dest))
+        {
+            if (!first.exists())
+            {
+                // 不删除 dest，它可能是上次合并时重命名过去的第一个分段
+                Logger.e(TAG, "分段不存在：%s", first.getAbsolutePath());
+                return false;
+            }
+            if (dest.exists() && !dest.delete())
+            {
+                Logger.e(TAG, "无法覆盖：%s", dest.getAbsolutePath());
+                return false;
+            }
+            if (first.renameTo(dest))
+            {
+                files.set(0, dest);
+                start = 1;
+                merged = dest.length();
+            }
+        }
+        else
+        {
+            start = 1;
+            merged = dest.length();
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(dest, "rw"))
+        {
+            FileChannel out = raf.getChannel();
+            if (start == 0)
+            {
+                out.truncate(0);
+            }
+            // 失败时截断到这里，避免再次合并时重复追加已成功的分段
+            long base = out.size();
+            boolean appended = false;
+            try
+            {
+                notifyProgress(merged, total);
+                for (int i = start; i < files.size(); i++)
+                {
+                    long position = out.size();
+                    if (!append(files.get(i), out, position, merged, total))
+                    {
+                        return false;
+                    }
+                    merged += out.size() - position;
+                }
+                appended = true;
+            }
+            finally
+            {
+                if (!appended)
+                {
+                    out.truncate(base);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            Logger.e(e, TAG, e.getMessage());
+            return false;
+        }
+
+        for (int i = start; i < files.size(); i++)
+        {
+            files.get(i).delete();
+        }
+        files.clear();
+        return true;
+    }
+
+    private boolean append(File file, FileChannel out, long position, long merged, long total)
+        throws IOException
+    {
+        try (FileInputStream fis = new FileInputStream(file))
+        {
+            FileChannel in = fis.getChannel();
+            long size = in.size();
+            long done = 0;
+            while (done < size)
+            {
+                if (canceled)
+                {
+                    Logger.w(TAG, "合并已取消");
+                    return false;
+                }
+                out.position(position + done);
+                long count = in.transferTo(done, Math.min(TRANSFER_CHUNK, size - done), out);
+                if (count <= 0)
+                {
+                    // 部分实现在 transferTo 不可用时返回 0，退回 transferFrom
+                    count = out.transferFrom(in.position(done), position + done, Math.min(TRANSFER_CHUNK, size - done));
+                    if (count <= 0)
+                    {
+                        Logger.e(TAG, "合并中断：%s", file.getAbsolutePath());
+                        return false;
+                    }
+                }
+                done += count;
+                notifyProgress(merged + done, total);
+            }
+        }
+        return true;
+    }
+
+    private void notifyProgress(long merged, long total)
+    {
+        if (onProgressListener != null)
+        {
+            onProgressListener.onProgress(merged, total);
+        }
+    }
+}
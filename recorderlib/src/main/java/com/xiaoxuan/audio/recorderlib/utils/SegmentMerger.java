@@ -0,0 +1,33 @@
+package com.xiaoxuan.audio.recorderlib.utils;
+
+/**
+ * 按顺序将多个分段合并为一个文件，在调用线程中执行，可在任意线程取消
+ * <p>
+ * 取消或失败时输出文件中本次写入的部分被截断，分段全部保留，可再次调用 {@link #merge()}；
+ * 成功后删除分段。
+ */
+public interface SegmentMerger
+{
+    /**
+     * @return 是否成功，取消时返回 false
+     */
+    boolean merge();
+
+    /**
+     * 取消合并，可在任意线程调用
+     */
+    void cancel();
+
+    SegmentMerger setOnProgressListener(OnProgressListener onProgressListener);
+
+    interface OnProgressListener
+    {
+        /**
+         * 在合并线程中回调
+         *
+         * @param merged 已合并字节数
+         * @param total 总字节数
+         */
+        void onProgress(long merged, long total);
+    }
+}
@@ -211,9 +211,16 @@ public class ByteUtils
     
     public static double[] toHardDouble(short[] shorts)
     {
-        int length = 512;
+        return toHardDouble(shorts, FftFactory.DEFAULT_FFT_SIZE);
+    }
+    
+    /**
+     * 取前 length 个采样转为 double[]，不足部分补零
+     */
+    public static double[] toHardDouble(short[] shorts, int length)
+    {
         double[] ds = new double[length];
-        for (int i = 0; i < length; i++)
+        for (int i = 0; i < length && i < shorts.length; i++)
         {
             ds[i] = shorts[i];
         }
@@ -244,7 +251,24 @@ public class ByteUtils
     
     public static byte[] toSoftBytes(double[] doubles)
     {
-        double max = getMax(doubles);
+        byte[] bytes = new byte[doubles.length];
+        toSoftBytes(doubles, doubles.length, bytes);
+        return bytes;
+    }
+    
+    /**
+     * 同 {@link #toSoftBytes(double[])}，结果写入 dest 的前 count 个元素，不分配新数组
+     */
+    public static void toSoftBytes(double[] doubles, int count, byte[] dest)
+    {
+        double max = 0;
+        for (int i = 0; i < count; i++)
+        {
+            if (doubles[i] > max)
+            {
+                max = doubles[i];
+            }
+        }
         
         double sc = 1f;
         if (max > 127)
@@ -252,13 +276,11 @@ public class ByteUtils
             sc = (max / 128f);
         }
         
-        byte[] bytes = new byte[doubles.length];
-        for (int i = 0; i < doubles.length; i++)
+        for (int i = 0; i < count; i++)
         {
             double item = doubles[i] / sc;
-            bytes[i] = (byte)(item > 127 ? 127 : item);
+            dest[i] = (byte)(item > 127 ? 127 : item);
         }
-        return bytes;
     }
     
     public static short[] toSoftShorts(double[] doubles)
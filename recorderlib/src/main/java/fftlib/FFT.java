@@ -6,42 +6,15 @@ public class FFT
     public static Complex[] fft(Complex[] x)
     {
         int n = x.length;
-        
-        // base case
-        if (n == 1)
-            return new Complex[] {x[0]};
-        
-        // radix 2 Cooley-Tukey FFT
-        if (n % 2 != 0)
-        {
-            throw new IllegalArgumentException("n is not a power of 2");
-        }
-        
-        // fft of even terms
-        Complex[] even = new Complex[n / 2];
-        for (int k = 0; k < n / 2; k++)
-        {
-            even[k] = x[2 * k];
-        }
-        Complex[] q = fft(even);
-        
-        // fft of odd terms
-        for (int k = 0; k < n / 2; k++)
-        {
-            even[k] = x[2 * k + 1];
-        }
-        Complex[] r = fft(even);
-        
-        // combine
-        Complex[] y = new Complex[n];
-        for (int k = 0; k < n / 2; k++)
+        double[] re = new double[n];
+        double[] im = new double[n];
+        for (int i = 0; i < n; i++)
         {
-            double kth = -2 * k * Math.PI / n;
-            Complex wk = new Complex(Math.cos(kth), Math.sin(kth));
-            y[k] = q[k].plus(wk.times(r[k]));
-            y[k + n / 2] = q[k].minus(wk.times(r[k]));
+            re[i] = x[i].re();
+            im[i] = x[i].im();
         }
-        return y;
+        FftPlan.engine(n).forward(re, im);
+        return toComplex(re, im);
     }
     
     public static double[] fft(double[] x, int sc)
@@ -51,50 +24,43 @@ public class FFT
         {
             return x;
         }
-        Complex[] cs = new Complex[len];
-        double[] ds = new double[len / 2];
-        for (int i = 0; i < len; i++)
+        FftPlan plan = FftPlan.obtain(len);
+        try
         {
-            cs[i] = new Complex(x[i], 0);
+            plan.load(x, 0);
+            plan.forward();
+            return plan.computeMagnitude().clone();
         }
-        Complex[] ffts = fft(cs);
-        
-        for (int i = 0; i < ds.length; i++)
+        finally
         {
-            ds[i] = Math.sqrt(Math.pow(ffts[i].re(), 2) + Math.pow(ffts[i].im(), 2)) / x.length;
+            plan.recycle();
+        }
+    }
+    
+    /**
+     * 计算幅值 |X[k]| * scale，写入 dest 的前 count 个元素
+     */
+    public static void magnitude(double[] re, double[] im, double[] dest, int count, double scale)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            dest[i] = Math.sqrt(re[i] * re[i] + im[i] * im[i]) * scale;
         }
-        return ds;
     }
     
     // compute the inverse FFT of x[], assuming its length is a power of 2
     public static Complex[] ifft(Complex[] x)
     {
         int n = x.length;
-        Complex[] y = new Complex[n];
-        
-        // take conjugate
-        for (int i = 0; i < n; i++)
-        {
-            y[i] = x[i].conjugate();
-        }
-        
-        // compute forward FFT
-        y = fft(y);
-        
-        // take conjugate again
+        double[] re = new double[n];
+        double[] im = new double[n];
         for (int i = 0; i < n; i++)
         {
-            y[i] = y[i].conjugate();
+            re[i] = x[i].re();
+            im[i] = x[i].im();
         }
-        
-        // divide by n
-        for (int i = 0; i < n; i++)
-        {
-            y[i] = y[i].scale(1.0 / n);
-        }
-        
-        return y;
-        
+        FftPlan.engine(n).inverse(re, im);
+        return toComplex(re, im);
     }
     
     // compute the circular convolution of x and y
@@ -109,20 +75,44 @@ public class FFT
         }
         
         int n = x.length;
+        double[] ar = new double[n];
+        double[] ai = new double[n];
+        double[] br = new double[n];
+        double[] bi = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            ar[i] = x[i].re();
+            ai[i] = x[i].im();
+            br[i] = y[i].re();
+            bi[i] = y[i].im();
+        }
+        cconvolve(ar, ai, br, bi);
+        return toComplex(ar, ai);
+    }
+    
+    /**
+     * 原地计算循环卷积，结果写回 ar/ai，br/bi 被用作中间结果
+     */
+    public static void cconvolve(double[] ar, double[] ai, double[] br, double[] bi)
+    {
+        int n = ar.length;
+        FftEngine engine = FftPlan.engine(n);
         
         // compute FFT of each sequence
-        Complex[] a = fft(x);
-        Complex[] b = fft(y);
+        engine.forward(ar, ai);
+        engine.forward(br, bi);
         
         // point-wise multiply
-        Complex[] c = new Complex[n];
         for (int i = 0; i < n; i++)
         {
-            c[i] = a[i].times(b[i]);
+            double re = ar[i] * br[i] - ai[i] * bi[i];
+            double im = ar[i] * bi[i] + ai[i] * br[i];
+            ar[i] = re;
+            ai[i] = im;
         }
         
         // compute inverse FFT
-        return ifft(c);
+        engine.inverse(ar, ai);
     }
     
     // compute the linear convolution of x and y
@@ -145,6 +135,16 @@ public class FFT
         return cconvolve(a, b);
     }
     
+    private static Complex[] toComplex(double[] re, double[] im)
+    {
+        Complex[] y = new Complex[re.length];
+        for (int i = 0; i < re.length; i++)
+        {
+            y[i] = new Complex(re[i], im[i]);
+        }
+        return y;
+    }
+    
     // display an array of Complex numbers to standard output
     public static void show(Complex[] x, String title)
     {
@@ -0,0 +1,152 @@
+package fftlib;
+
+/**
+ * 频带划分：将 FFT 频点按对数频率合并为少量频带，供可视化直接使用
+ * <p>
+ * 频点到频带的映射在构造时计算一次，之后每帧只做一次线性扫描。
+ */
+public class FftBands
+{
+    /**
+     * 音乐频带下限 Hz
+     */
+    private static final double MUSIC_MIN_FREQ = 40;
+
+    /**
+     * 音乐频带上限 Hz
+     */
+    private static final double MUSIC_MAX_FREQ = 16000;
+
+    /**
+     * 人声频带下限 Hz
+     */
+    private static final double SPEECH_MIN_FREQ = 80;
+
+    /**
+     * 人声频带上限 Hz
+     */
+    private static final double SPEECH_MAX_FREQ = 8000;
+
+    /**
+     * 16bit 满幅正弦的幅值约为 32768/2，对应约 84dB
+     */
+    private static final double FULL_SCALE_DB = 20 * Math.log10(16384);
+
+    private final FftFactory.Level level;
+
+    private final int bandCount;
+
+    /**
+     * 第 i 个频带包含频点 [bandStart[i], bandEnd[i])
+     */
+    private final int[] bandStart;
+
+    private final int[] bandEnd;
+
+    /**
+     * @param level 处理等级：Music 按对数频率等分（分数倍频程），People 按 Bark 刻度划分人声频段，
+     *            Maximal 与 Music 相同但取频带内峰值
+     * @param fftSize 每帧采样点数
+     * @param sampleRate 采样率
+     * @param bandCount 频带数量
+     */
+    public FftBands(FftFactory.Level level, int fftSize, int sampleRate, int bandCount)
+    {
+        if (bandCount <= 0)
+        {
+            throw new IllegalArgumentException("bandCount must be positive: " + bandCount);
+        }
+        this.level = level;
+        this.bandCount = bandCount;
+        this.bandStart = new int[bandCount];
+        this.bandEnd = new int[bandCount];
+
+        int bins = fftSize / 2;
+        double binWidth = (double)sampleRate / fftSize;
+        double nyquist = sampleRate / 2.0;
+        boolean speech = level == FftFactory.Level.People;
+        double minFreq = speech ? SPEECH_MIN_FREQ : MUSIC_MIN_FREQ;
+        double maxFreq = Math.min(speech ? SPEECH_MAX_FREQ : MUSIC_MAX_FREQ, nyquist);
+        minFreq = Math.min(minFreq, maxFreq / 2);
+
+        double low = speech ? hzToBark(minFreq) : Math.log(minFreq);
+        double high = speech ? hzToBark(maxFreq) : Math.log(maxFreq);
+        for (int i = 0; i < bandCount; i++)
+        {
+            double f0 = toHz(low + (high - low) * i / bandCount, speech);
+            double f1 = toHz(low + (high - low) * (i + 1) / bandCount, speech);
+            int start = (int)Math.round(f0 / binWidth);
+            int end = (int)Math.round(f1 / binWidth);
+            start = Math.max(0, Math.min(start, bins - 1));
+            end = Math.max(start + 1, Math.min(end, bins));
+            bandStart[i] = start;
+            bandEnd[i] = end;
+        }
+    }
+
+    private static double toHz(double value, boolean bark)
+    {
+        return bark ? barkToHz(value) : Math.exp(value);
+    }
+
+    /**
+     * Bark 刻度（Traunmüller 近似）
+     */
+    private static double hzToBark(double hz)
+    {
+        return 26.81 * hz / (1960 + hz) - 0.53;
+    }
+
+    private static double barkToHz(double bark)
+    {
+        return 1960 * (bark + 0.53) / (26.28 - bark);
+    }
+
+    public int getBandCount()
+    {
+        return bandCount;
+    }
+
+    /**
+     * 合并频点
+     *
+     * @param magnitude 频点幅值
+     * @param dest 频带幅值，长度不小于 bandCount；Maximal 取频带内峰值，其余取均方根
+     */
+    public void reduce(double[] magnitude, double[] dest)
+    {
+        boolean peak = level == FftFactory.Level.Maximal;
+        for (int i = 0; i < bandCount; i++)
+        {
+            int start = bandStart[i];
+            int end = Math.min(bandEnd[i], magnitude.length);
+            double value = 0;
+            if (peak)
+            {
+                for (int k = start; k < end; k++)
+                {
+                    value = Math.max(value, magnitude[k]);
+                }
+            }
+            else if (end > start)
+            {
+                for (int k = start; k < end; k++)
+                {
+                    value += magnitude[k] * magnitude[k];
+                }
+                value = Math.sqrt(value / (end - start));
+            }
+            dest[i] = value;
+        }
+    }
+
+    /**
+     * 将频带幅值按分贝映射到 0~127
+     */
+    public static byte toDbByte(double magnitude)
+    {
+        double db = 20 * Math.log10(1 + magnitude);
+        double scaled = db * 127 / FULL_SCALE_DB;
+        return (byte)(scaled > 127 ? 127 : scaled < 0 ? 0 : scaled);
+    }
+}
@@ -0,0 +1,213 @@
+package fftlib;
+
+/**
+ * 迭代式基2 FFT，直接在实部/虚部数组上原地计算
+ * <p>
+ * 位反转表与旋转因子表在构造时按长度计算一次，之后每次变换不再分配对象，也不再调用三角函数。
+ * 同一实例的变换方法不修改内部状态，可被多个线程同时使用。
+ */
+public class FftEngine
+{
+    private final int n;
+
+    /**
+     * 位反转置换表：reverse[i] 为 i 的位反转结果
+     */
+    private final int[] reverse;
+
+    /**
+     * 旋转因子 cos(2πk/n), k ∈ [0, n/2)
+     */
+    private final double[] cos;
+
+    /**
+     * 旋转因子 sin(2πk/n), k ∈ [0, n/2)
+     */
+    private final double[] sin;
+
+    private final float[] cosF;
+
+    private final float[] sinF;
+
+    /**
+     * @param n 变换长度，必须为2的幂
+     */
+    public FftEngine(int n)
+    {
+        if (!isPowerOfTwo(n))
+        {
+            throw new IllegalArgumentException("n is not a power of 2");
+        }
+        this.n = n;
+
+        reverse = new int[n];
+        int bits = Integer.numberOfTrailingZeros(n);
+        for (int i = 0; i < n; i++)
+        {
+            reverse[i] = bits == 0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+        }
+
+        int half = n / 2;
+        cos = new double[half];
+        sin = new double[half];
+        cosF = new float[half];
+        sinF = new float[half];
+        for (int k = 0; k < half; k++)
+        {
+            double kth = 2 * k * Math.PI / n;
+            cos[k] = Math.cos(kth);
+            sin[k] = Math.sin(kth);
+            cosF[k] = (float)cos[k];
+            sinF[k] = (float)sin[k];
+        }
+    }
+
+    public static boolean isPowerOfTwo(int n)
+    {
+        return n > 0 && (n & (n - 1)) == 0;
+    }
+
+    public int size()
+    {
+        return n;
+    }
+
+    /**
+     * 正变换，结果写回 re/im
+     */
+    public void forward(double[] re, double[] im)
+    {
+        transform(re, im, false);
+    }
+
+    /**
+     * 逆变换（含 1/n 归一化），结果写回 re/im
+     */
+    public void inverse(double[] re, double[] im)
+    {
+        transform(re, im, true);
+        double scale = 1.0 / n;
+        for (int i = 0; i < n; i++)
+        {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    public void forward(float[] re, float[] im)
+    {
+        transform(re, im, false);
+    }
+
+    public void inverse(float[] re, float[] im)
+    {
+        transform(re, im, true);
+        float scale = 1f / n;
+        for (int i = 0; i < n; i++)
+        {
+            re[i] *= scale;
+            im[i] *= scale;
+        }
+    }
+
+    private void transform(double[] re, double[] im, boolean inverse)
+    {
+        checkLength(re.length, im.length);
+        permute(re, im);
+
+        // 正变换 w = e^(-2πik/n)，逆变换 w = e^(2πik/n)
+        double sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1)
+        {
+            int half = len >> 1;
+            int step = n / len;
+            for (int start = 0; start < n; start += len)
+            {
+                for (int k = 0, t = 0; k < half; k++, t += step)
+                {
+                    int a = start + k;
+                    int b = a + half;
+                    double wr = cos[t];
+                    double wi = sign * sin[t];
+                    double xr = re[b] * wr - im[b] * wi;
+                    double xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    private void transform(float[] re, float[] im, boolean inverse)
+    {
+        checkLength(re.length, im.length);
+        permute(re, im);
+
+        float sign = inverse ? 1 : -1;
+        for (int len = 2; len <= n; len <<= 1)
+        {
+            int half = len >> 1;
+            int step = n / len;
+            for (int start = 0; start < n; start += len)
+            {
+                for (int k = 0, t = 0; k < half; k++, t += step)
+                {
+                    int a = start + k;
+                    int b = a + half;
+                    float wr = cosF[t];
+                    float wi = sign * sinF[t];
+                    float xr = re[b] * wr - im[b] * wi;
+                    float xi = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - xr;
+                    im[b] = im[a] - xi;
+                    re[a] += xr;
+                    im[a] += xi;
+                }
+            }
+        }
+    }
+
+    private void permute(double[] re, double[] im)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            int j = reverse[i];
+            if (i < j)
+            {
+                double tr = re[i];
+                re[i] = re[j];
+                re[j] = tr;
+                double ti = im[i];
+                im[i] = im[j];
+                im[j] = ti;
+            }
+        }
+    }
+
+    private void permute(float[] re, float[] im)
+    {
+        for (int i = 0; i < n; i++)
+        {
+            int j = reverse[i];
+            if (i < j)
+            {
+                float tr = re[i];
+                re[i] = re[j];
+                re[j] = tr;
+                float ti = im[i];
+                im[i] = im[j];
+                im[j] = ti;
+            }
+        }
+    }
+
+    private void checkLength(int reLength, int imLength)
+    {
+        if (reLength < n || imLength < n)
+        {
+            throw new IllegalArgumentException("Dimensions don't agree");
+        }
+    }
+}
@@ -2,6 +2,8 @@ package fftlib;
 
 import com.xiaoxuan.audio.recorderlib.utils.Logger;
 
+import java.util.Arrays;
+
 /**
  * FFT 数据处理工厂
  */
@@ -9,78 +11,338 @@ public class FftFactory
 {
     private static final String TAG = FftFactory.class.getSimpleName();
     
+    /**
+     * 默认每帧参与计算的采样点数
+     */
+    public static final int DEFAULT_FFT_SIZE = 512;
+    
+    /**
+     * dB 输出的下限
+     */
+    public static final float MIN_DB = -120f;
+    
+    /**
+     * 16bit 满幅正弦在频谱上的幅值，对应 0dBFS
+     */
+    private static final double FULL_SCALE_MAGNITUDE = 16384;
+    
     private Level level = Level.Original;
     
+    private int fftSize = DEFAULT_FFT_SIZE;
+    
+    private FftWindow window = FftWindow.HANN;
+    
+    /**
+     * 相邻两帧起点的间隔（采样点数），小于 fftSize 时帧之间有重叠
+     */
+    private int hopSize = DEFAULT_FFT_SIZE;
+    
+    /**
+     * 默认频带数量
+     */
+    public static final int DEFAULT_BAND_COUNT = 32;
+    
+    private int sampleRate = 16000;
+    
+    private int bandCount = DEFAULT_BAND_COUNT;
+    
+    /**
+     * 频点到频带的映射，非 Original 等级时使用，配置变化后重建
+     */
+    private FftBands bands;
+    
+    private double[] bandValues;
+    
+    /**
+     * 在工厂的整个生命周期内持有，缓冲区在每帧之间复用，避免频繁GC
+     */
+    private FftPlan plan;
+    
+    /**
+     * 一次输入中多帧幅值的累加结果
+     */
+    private double[] average;
+    
     public FftFactory(Level level)
     {
-        // this.level = level;
+        this.level = level;
+    }
+    
+    /**
+     * 设置每帧的采样点数，越大频率分辨率越高，计算量也越大
+     *
+     * @param fftSize 2的幂，不小于2
+     */
+    public FftFactory setFftSize(int fftSize)
+    {
+        if (fftSize < 2 || !FftEngine.isPowerOfTwo(fftSize))
+        {
+            throw new IllegalArgumentException("fftSize is not a power of 2: " + fftSize);
+        }
+        if (hopSize == this.fftSize)
+        {
+            hopSize = fftSize;
+        }
+        this.fftSize = fftSize;
+        this.bands = null;
+        release();
+        return this;
+    }
+    
+    public FftFactory setWindow(FftWindow window)
+    {
+        this.window = window == null ? FftWindow.RECTANGULAR : window;
+        release();
+        return this;
+    }
+    
+    /**
+     * 设置帧移（采样点数）
+     * <p>
+     * 一次输入的数据长于一帧时，按帧移依次取多帧计算后取平均；帧移越小，分析的数据越多，计算量也越大
+     *
+     * @param hopSize 大于0，通常为 fftSize / 2 或 fftSize / 4
+     */
+    public FftFactory setHopSize(int hopSize)
+    {
+        if (hopSize <= 0)
+        {
+            throw new IllegalArgumentException("hopSize must be positive: " + hopSize);
+        }
+        this.hopSize = hopSize;
+        return this;
+    }
+    
+    /**
+     * 设置采样率，用于计算频带边界
+     */
+    public FftFactory setSampleRate(int sampleRate)
+    {
+        this.sampleRate = sampleRate;
+        this.bands = null;
+        return this;
+    }
+    
+    /**
+     * 设置 Music/People/Maximal 等级输出的频带数量
+     */
+    public FftFactory setBandCount(int bandCount)
+    {
+        if (bandCount <= 0)
+        {
+            throw new IllegalArgumentException("bandCount must be positive: " + bandCount);
+        }
+        this.bandCount = bandCount;
+        this.bands = null;
+        return this;
+    }
+    
+    public Level getLevel()
+    {
+        return level;
+    }
+    
+    public int getBandCount()
+    {
+        return bandCount;
+    }
+    
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+    
+    public FftWindow getWindow()
+    {
+        return window;
+    }
+    
+    public int getHopSize()
+    {
+        return hopSize;
     }
     
+    /**
+     * 输出值的个数：Original 为 fftSize/2，其余等级为 bandCount
+     */
+    public int getOutputSize()
+    {
+        return level == Level.Original ? fftSize / 2 : bandCount;
+    }
+    
+    /**
+     * @param pcmData 16bit 小端 PCM 数据，不足一帧时补零
+     * @return 前 fftSize/2 个频点的幅值
+     */
     public byte[] makeFftData(byte[] pcmData)
+    {
+        double[] magnitude = computeMagnitude(pcmData, 0, pcmData.length);
+        return magnitude == null ? null : makeFftData(magnitude);
+    }
+    
+    /**
+     * 计算频谱并写入调用方提供的数组，不分配内存
+     *
+     * @param pcmData 16bit 小端 PCM 数据
+     * @param offset 起始字节
+     * @param length 字节数
+     * @param dest 输出数组，长度建议不小于 {@link #getOutputSize()}
+     * @param db true: 输出 dBFS（满幅正弦为 0dB，最低 {@link #MIN_DB}）；false: 输出线性幅值
+     * @return 写入的个数
+     */
+    public int makeFftData(byte[] pcmData, int offset, int length, float[] dest, boolean db)
+    {
+        double[] magnitude = computeMagnitude(pcmData, offset, length);
+        return magnitude == null ? 0 : makeFftData(magnitude, dest, db);
+    }
+    
+    /**
+     * 计算频谱并写入调用方提供的数组，不分配内存，取值与 {@link #makeFftData(byte[])} 相同
+     *
+     * @return 写入的个数
+     */
+    public int makeFftData(byte[] pcmData, int offset, int length, byte[] dest)
+    {
+        double[] magnitude = computeMagnitude(pcmData, offset, length);
+        return magnitude == null ? 0 : makeFftData(magnitude, dest);
+    }
+    
+    private double[] computeMagnitude(byte[] pcmData, int offset, int length)
     {
         // Logger.d(TAG, "pcmData length: %s", pcmData.length);
-        if (pcmData.length < 1024)
+        int samples = length / 2;
+        if (samples == 0)
         {
             Logger.d(TAG, "makeFftData");
             return null;
         }
+        ensurePlan();
         
-        double[] doubles = ByteUtils.toHardDouble(ByteUtils.toShorts(pcmData));
-        double[] fft = FFT.fft(doubles, 0);
-        
-        switch (level)
+        if (samples <= fftSize)
         {
-            case Original:
-                return ByteUtils.toSoftBytes(fft);
-            case Maximal:
-                // return doFftMaximal(fft);
-            default:
-                return ByteUtils.toHardBytes(fft);
+            plan.loadPcm16(pcmData, offset, samples);
+            plan.forward();
+            return plan.computeMagnitude();
         }
-    }
-    
-    private byte[] doFftMaximal(double[] fft)
-    {
-        byte[] bytes = ByteUtils.toSoftBytes(fft);
-        byte[] result = new byte[bytes.length];
         
-        for (int i = 0; i < bytes.length; i++)
+        int frames = 0;
+        Arrays.fill(average, 0);
+        for (int start = 0; start + fftSize <= samples; start += hopSize)
         {
-            
-            if (isSimpleData(bytes, i))
+            plan.loadPcm16(pcmData, offset + start * 2);
+            plan.forward();
+            double[] frame = plan.computeMagnitude();
+            for (int i = 0; i < average.length; i++)
             {
-                result[i] = bytes[i];
-            }
-            else
-            {
-                result[Math.max(i - 1, 0)] = (byte)(bytes[i] / 2);
-                result[Math.min(i + 1, result.length - 1)] = (byte)(bytes[i] / 2);
+                average[i] += frame[i];
             }
+            frames++;
         }
-        
+        for (int i = 0; i < average.length; i++)
+        {
+            average[i] /= frames;
+        }
+        return average;
+    }
+    
+    /**
+     * 按处理等级将幅值转换为可视化数据
+     *
+     * @param magnitude 频点幅值，如 {@link Stft} 输出的一帧
+     * @return Original: 每个频点一个值；Music/People/Maximal: 每个频带一个值（0~127，按分贝刻度）
+     */
+    public byte[] makeFftData(double[] magnitude)
+    {
+        byte[] result = new byte[level == Level.Original ? magnitude.length : bandCount];
+        makeFftData(magnitude, result);
         return result;
     }
     
-    private boolean isSimpleData(byte[] data, int i)
+    /**
+     * 同 {@link #makeFftData(double[])}，结果写入 dest
+     *
+     * @return 写入的个数
+     */
+    public int makeFftData(double[] magnitude, byte[] dest)
     {
-        
-        int start = Math.max(0, i - 5);
-        int end = Math.min(data.length, i + 5);
-        
-        byte max = 0, min = 127;
-        for (int j = start; j < end; j++)
+        if (level == Level.Original)
         {
-            if (data[j] > max)
-            {
-                max = data[j];
-            }
-            if (data[j] < min)
-            {
-                min = data[j];
-            }
+            int count = Math.min(magnitude.length, dest.length);
+            ByteUtils.toSoftBytes(magnitude, count, dest);
+            return count;
+        }
+        ensureBands();
+        bands.reduce(magnitude, bandValues);
+        int count = Math.min(bandCount, dest.length);
+        for (int i = 0; i < count; i++)
+        {
+            dest[i] = FftBands.toDbByte(bandValues[i]);
+        }
+        return count;
+    }
+    
+    /**
+     * 按处理等级将幅值写入 dest：Original 为每个频点的值，其余等级为每个频带的值
+     *
+     * @param db true: 输出 dBFS；false: 输出线性幅值
+     * @return 写入的个数
+     */
+    public int makeFftData(double[] magnitude, float[] dest, boolean db)
+    {
+        double[] values = magnitude;
+        int count = Math.min(magnitude.length, dest.length);
+        if (level != Level.Original)
+        {
+            ensureBands();
+            bands.reduce(magnitude, bandValues);
+            values = bandValues;
+            count = Math.min(bandCount, dest.length);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            dest[i] = db ? toDb(values[i]) : (float)values[i];
+        }
+        return count;
+    }
+    
+    private static float toDb(double magnitude)
+    {
+        if (magnitude <= 0)
+        {
+            return MIN_DB;
+        }
+        double db = 20 * Math.log10(magnitude / FULL_SCALE_MAGNITUDE);
+        return db < MIN_DB ? MIN_DB : (float)db;
+    }
+    
+    private void ensureBands()
+    {
+        if (bands == null)
+        {
+            bands = new FftBands(level, fftSize, sampleRate, bandCount);
+            bandValues = new double[bandCount];
+        }
+    }
+    
+    private void ensurePlan()
+    {
+        if (plan == null)
+        {
+            plan = FftPlan.obtain(fftSize, window);
+            average = new double[fftSize / 2];
+        }
+    }
+    
+    /**
+     * 将持有的计算计划归还缓存，下次计算时重新借出
+     */
+    public void release()
+    {
+        if (plan != null)
+        {
+            plan.recycle();
+            plan = null;
         }
-        
-        return data[i] == min || data[i] == max;
     }
     
     /**
@@ -95,17 +357,17 @@ public class FftFactory
         Original,
         
         /**
-         * 对音乐进行优化
+         * 对音乐进行优化：按对数频率划分频带
          */
         Music,
         
         /**
-         * 对人声进行优化
+         * 对人声进行优化：按 Bark 刻度划分 80Hz~8kHz 的人声频段
          */
         People,
         
         /**
-         * 极限优化
+         * 极限优化：频带划分同 Music，取频带内峰值
          */
         Maximal
     }
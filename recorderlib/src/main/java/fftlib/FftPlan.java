@@ -0,0 +1,252 @@
+package fftlib;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 指定长度的 FFT 计算计划
+ * <p>
+ * 旋转因子、位反转表、窗函数系数按长度只计算一次，由同长度的所有计划共享；
+ * 每个计划另有一份自己的工作缓冲区，因此同一时刻只能被一个线程使用。
+ * <p>
+ * 通过 {@link #obtain(int, FftWindow)} 从缓存借出，用完后调用 {@link #recycle()} 归还。
+ * 需要长时间连续计算的场景（如实时频谱）可一直持有，不必每帧借还。
+ */
+public class FftPlan
+{
+    private static final ConcurrentHashMap<Integer, FftEngine> ENGINES = new ConcurrentHashMap<>();
+
+    private static final ConcurrentHashMap<Integer, RealFft> REAL_FFTS = new ConcurrentHashMap<>();
+
+    /**
+     * 空闲计划，按 长度 + 窗函数 分组
+     */
+    private static final ConcurrentHashMap<Long, Queue<FftPlan>> IDLE_PLANS = new ConcurrentHashMap<>();
+
+    private final int size;
+
+    private final FftWindow windowType;
+
+    private final RealFft realFft;
+
+    /**
+     * 窗函数系数，null 表示矩形窗（不加窗）
+     */
+    private final double[] window;
+
+    /**
+     * 幅值换算系数 1 / Σw，加窗后仍能得到与原始幅度一致的结果
+     */
+    private final double scale;
+
+    private final double[] re;
+
+    private final double[] im;
+
+    private final double[] magnitude;
+
+    private FftPlan(int size, FftWindow windowType)
+    {
+        this.size = size;
+        this.windowType = windowType;
+        this.realFft = realFft(size);
+        this.window = windowType.table(size);
+        this.scale = 1.0 / windowType.sum(size);
+        this.re = new double[size / 2 + 1];
+        this.im = new double[size / 2 + 1];
+        this.magnitude = new double[size / 2];
+    }
+
+    /**
+     * 从缓存中借出一个计划，没有空闲的则新建
+     *
+     * @param size 实数采样点数，必须为2的幂且不小于2
+     */
+    public static FftPlan obtain(int size)
+    {
+        return obtain(size, FftWindow.RECTANGULAR);
+    }
+
+    /**
+     * 从缓存中借出一个计划，没有空闲的则新建
+     *
+     * @param size 实数采样点数，必须为2的幂且不小于2
+     * @param window 窗函数
+     */
+    public static FftPlan obtain(int size, FftWindow window)
+    {
+        Queue<FftPlan> idle = IDLE_PLANS.get(key(size, window));
+        FftPlan plan = idle == null ? null : idle.poll();
+        return plan != null ? plan : new FftPlan(size, window);
+    }
+
+    private static long key(int size, FftWindow window)
+    {
+        return ((long)window.ordinal() << 32) | size;
+    }
+
+    /**
+     * 归还到缓存，归还后不可再使用
+     */
+    public void recycle()
+    {
+        long key = key(size, windowType);
+        Queue<FftPlan> idle = IDLE_PLANS.get(key);
+        if (idle == null)
+        {
+            Queue<FftPlan> created = new ConcurrentLinkedQueue<>();
+            idle = IDLE_PLANS.putIfAbsent(key, created);
+            if (idle == null)
+            {
+                idle = created;
+            }
+        }
+        idle.offer(this);
+    }
+
+    /**
+     * 获取共享的 n 点复数 FFT 引擎
+     */
+    public static FftEngine engine(int n)
+    {
+        FftEngine engine = ENGINES.get(n);
+        if (engine == null)
+        {
+            FftEngine created = new FftEngine(n);
+            engine = ENGINES.putIfAbsent(n, created);
+            if (engine == null)
+            {
+                engine = created;
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * 获取共享的 n 点实数 FFT
+     */
+    public static RealFft realFft(int n)
+    {
+        RealFft realFft = REAL_FFTS.get(n);
+        if (realFft == null)
+        {
+            RealFft created = new RealFft(n, engine(n / 2));
+            realFft = REAL_FFTS.putIfAbsent(n, created);
+            if (realFft == null)
+            {
+                realFft = created;
+            }
+        }
+        return realFft;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public FftWindow window()
+    {
+        return windowType;
+    }
+
+    /**
+     * 载入 16bit 小端 PCM，从 offset 字节处开始读取 size 个采样，并乘以窗函数
+     */
+    public void loadPcm16(byte[] pcm, int offset)
+    {
+        loadPcm16(pcm, offset, size);
+    }
+
+    /**
+     * 载入 16bit 小端 PCM，从 offset 字节处开始读取 count 个采样，不足 size 的部分补零
+     */
+    public void loadPcm16(byte[] pcm, int offset, int count)
+    {
+        for (int i = 0, j = 0; i < size / 2; i++, j += 2)
+        {
+            int p = offset + j * 2;
+            double even = j < count ? (short)((pcm[p] & 0xff) | ((pcm[p + 1] & 0xff) << 8)) : 0;
+            double odd = j + 1 < count ? (short)((pcm[p + 2] & 0xff) | ((pcm[p + 3] & 0xff) << 8)) : 0;
+            if (window != null)
+            {
+                even *= window[j];
+                odd *= window[j + 1];
+            }
+            re[i] = even;
+            im[i] = odd;
+        }
+    }
+
+    /**
+     * 载入实数采样，从 offset 处开始读取 size 个采样，并乘以窗函数
+     */
+    public void load(double[] x, int offset)
+    {
+        for (int i = 0, j = 0; i < size / 2; i++, j += 2)
+        {
+            double even = x[offset + j];
+            double odd = x[offset + j + 1];
+            if (window != null)
+            {
+                even *= window[j];
+                odd *= window[j + 1];
+            }
+            re[i] = even;
+            im[i] = odd;
+        }
+    }
+
+    /**
+     * 从长度为 size 的环形缓冲区载入一帧，start 为最旧采样的位置
+     */
+    public void loadRing(double[] ring, int start)
+    {
+        int mask = size - 1;
+        for (int i = 0, j = 0; i < size / 2; i++, j += 2)
+        {
+            double even = ring[(start + j) & mask];
+            double odd = ring[(start + j + 1) & mask];
+            if (window != null)
+            {
+                even *= window[j];
+                odd *= window[j + 1];
+            }
+            re[i] = even;
+            im[i] = odd;
+        }
+    }
+
+    /**
+     * 对已载入的数据做变换，结果为 {@link #real()}、{@link #imag()} 中的 size/2+1 个频点
+     */
+    public void forward()
+    {
+        realFft.forwardPacked(re, im);
+    }
+
+    /**
+     * 计算前 size/2 个频点的幅值 |X[k]| / Σw（不加窗时即 |X[k]| / size），结果写入 {@link #magnitude()}
+     */
+    public double[] computeMagnitude()
+    {
+        FFT.magnitude(re, im, magnitude, magnitude.length, scale);
+        return magnitude;
+    }
+
+    public double[] real()
+    {
+        return re;
+    }
+
+    public double[] imag()
+    {
+        return im;
+    }
+
+    public double[] magnitude()
+    {
+        return magnitude;
+    }
+}
@@ -0,0 +1,100 @@
+package fftlib;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * FFT 窗函数
+ * <p>
+ * 系数表按长度计算一次后缓存，返回的数组为共享只读数据，调用方不可修改。
+ */
+public enum FftWindow
+{
+    /**
+     * 矩形窗，即不加窗
+     */
+    RECTANGULAR,
+
+    /**
+     * 汉宁窗，通用，旁瓣衰减较快
+     */
+    HANN,
+
+    /**
+     * 汉明窗，第一旁瓣更低，衰减较慢
+     */
+    HAMMING,
+
+    /**
+     * 4项 Blackman-Harris 窗，旁瓣约 -92dB，主瓣较宽
+     */
+    BLACKMAN_HARRIS;
+
+    private final ConcurrentHashMap<Integer, double[]> tables = new ConcurrentHashMap<>();
+
+    /**
+     * 获取长度为 n 的系数表（周期窗，适用于频谱分析）
+     *
+     * @return 系数表，矩形窗返回 null
+     */
+    public double[] table(int n)
+    {
+        if (this == RECTANGULAR)
+        {
+            return null;
+        }
+        double[] table = tables.get(n);
+        if (table == null)
+        {
+            double[] created = create(n);
+            table = tables.putIfAbsent(n, created);
+            if (table == null)
+            {
+                table = created;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * 相干增益：系数之和，用于将加窗后的幅值换算回原始幅度
+     */
+    public double sum(int n)
+    {
+        double[] table = table(n);
+        if (table == null)
+        {
+            return n;
+        }
+        double sum = 0;
+        for (double w : table)
+        {
+            sum += w;
+        }
+        return sum;
+    }
+
+    private double[] create(int n)
+    {
+        double[] table = new double[n];
+        for (int i = 0; i < n; i++)
+        {
+            double x = 2 * Math.PI * i / n;
+            switch (this)
+            {
+                case HANN:
+                    table[i] = 0.5 - 0.5 * Math.cos(x);
+                    break;
+                case HAMMING:
+                    table[i] = 0.54 - 0.46 * Math.cos(x);
+                    break;
+                case BLACKMAN_HARRIS:
+                    table[i] = 0.35875 - 0.48829 * Math.cos(x) + 0.14128 * Math.cos(2 * x) - 0.01168 * Math.cos(3 * x);
+                    break;
+                default:
+                    table[i] = 1;
+                    break;
+            }
+        }
+        return table;
+    }
+}
@@ -0,0 +1,126 @@
+package fftlib;
+
+/**
+ * 实数输入 FFT
+ * <p>
+ * 将 n 个实数采样打包为 n/2 个复数（偶数下标为实部，奇数下标为虚部），做一次 n/2 点复数 FFT，
+ * 再经后处理拆分得到 0 ~ n/2 共 n/2+1 个频点。相比直接做 n 点复数 FFT，计算量约减半。
+ * <p>
+ * 实例只保存只读的表，可被多个线程同时使用。
+ */
+public class RealFft
+{
+    private final int n;
+
+    private final int half;
+
+    private final FftEngine engine;
+
+    /**
+     * 后处理旋转因子 cos(2πk/n), sin(2πk/n), k ∈ [0, n/4]
+     */
+    private final double[] cos;
+
+    private final double[] sin;
+
+    /**
+     * @param n 实数采样点数，必须为2的幂且不小于2
+     */
+    public RealFft(int n)
+    {
+        this(n, null);
+    }
+
+    /**
+     * @param engine 共享的 n/2 点复数 FFT 引擎，为 null 时新建
+     */
+    RealFft(int n, FftEngine engine)
+    {
+        if (n < 2 || !FftEngine.isPowerOfTwo(n))
+        {
+            throw new IllegalArgumentException("n is not a power of 2");
+        }
+        this.n = n;
+        this.half = n / 2;
+        this.engine = engine != null ? engine : new FftEngine(half);
+
+        int count = half / 2 + 1;
+        cos = new double[count];
+        sin = new double[count];
+        for (int k = 0; k < count; k++)
+        {
+            double kth = 2 * k * Math.PI / n;
+            cos[k] = Math.cos(kth);
+            sin[k] = Math.sin(kth);
+        }
+    }
+
+    public int size()
+    {
+        return n;
+    }
+
+    /**
+     * 输出频点数 n/2+1
+     */
+    public int outputSize()
+    {
+        return half + 1;
+    }
+
+    /**
+     * 计算 x 前 n 个采样的频谱
+     *
+     * @param x 实数采样
+     * @param re 频谱实部，长度不小于 n/2+1
+     * @param im 频谱虚部，长度不小于 n/2+1
+     */
+    public void forward(double[] x, double[] re, double[] im)
+    {
+        for (int k = 0; k < half; k++)
+        {
+            re[k] = x[2 * k];
+            im[k] = x[2 * k + 1];
+        }
+        forwardPacked(re, im);
+    }
+
+    /**
+     * 对已打包好的数据做变换：调用前 re[k] = x[2k], im[k] = x[2k+1]，k ∈ [0, n/2)
+     * <p>
+     * 调用方可直接从 PCM 数据打包，省去中间数组。
+     */
+    public void forwardPacked(double[] re, double[] im)
+    {
+        if (re.length <= half || im.length <= half)
+        {
+            throw new IllegalArgumentException("Dimensions don't agree");
+        }
+        engine.forward(re, im);
+
+        // X[k] = E[k] + W^k * O[k]，E/O 为偶/奇序列的频谱，由 Z[k] 与 conj(Z[n/2-k]) 得到
+        // X[n/2-k] 与 X[k] 共用同一组 Z，成对原地计算
+        for (int k = 1, m = half - 1; k <= m; k++, m--)
+        {
+            double er = (re[k] + re[m]) * 0.5;
+            double ei = (im[k] - im[m]) * 0.5;
+            double or = (im[k] + im[m]) * 0.5;
+            double oi = (re[m] - re[k]) * 0.5;
+            double c = cos[k];
+            double s = sin[k];
+            double tr = c * or + s * oi;
+            double ti = c * oi - s * or;
+            re[k] = er + tr;
+            im[k] = ei + ti;
+            re[m] = er - tr;
+            im[m] = ti - ei;
+        }
+
+        double r0 = re[0];
+        double i0 = im[0];
+        re[0] = r0 + i0;
+        im[0] = 0;
+        re[half] = r0 - i0;
+        im[half] = 0;
+    }
+}
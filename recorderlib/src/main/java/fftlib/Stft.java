@@ -0,0 +1,169 @@
+package fftlib;
+
+/**
+ * 流式短时傅里叶变换
+ * <p>
+ * 输入的 PCM 先写入环形缓冲区，每累计 hopSize 个采样输出一帧（最近 fftSize 个采样的频谱），
+ * 与每次写入的数据长度无关，因此每秒帧数固定为 sampleRate / hopSize。
+ * <p>
+ * 非线程安全，应只在采集线程中使用。
+ */
+public class Stft
+{
+    private final int fftSize;
+
+    private final int hopSize;
+
+    private final int channels;
+
+    private final FftPlan plan;
+
+    /**
+     * 最近 fftSize 个（多声道时为混合后的）采样
+     */
+    private final double[] ring;
+
+    private int writePos;
+
+    /**
+     * 环形缓冲区中有效采样数，满 fftSize 之前不输出
+     */
+    private int filled;
+
+    /**
+     * 距上一帧输出后新写入的采样数
+     */
+    private int sinceLastFrame;
+
+    private long frameCount;
+
+    /**
+     * @param fftSize 每帧采样点数，2的幂
+     * @param hopSize 帧移（采样点数）
+     * @param window 窗函数
+     * @param channels 输入声道数，多声道时取平均混为单声道
+     */
+    public Stft(int fftSize, int hopSize, FftWindow window, int channels)
+    {
+        if (hopSize <= 0)
+        {
+            throw new IllegalArgumentException("hopSize must be positive: " + hopSize);
+        }
+        this.fftSize = fftSize;
+        this.hopSize = hopSize;
+        this.channels = Math.max(1, channels);
+        this.plan = FftPlan.obtain(fftSize, window);
+        this.ring = new double[fftSize];
+    }
+
+    /**
+     * 写入 16bit 采样
+     *
+     * @param samples 交错排列的采样
+     * @param offset 起始下标
+     * @param length 采样个数（所有声道合计）
+     */
+    public void write(short[] samples, int offset, int length, OnFrameListener listener)
+    {
+        int end = offset + length - length % channels;
+        for (int i = offset; i < end; i += channels)
+        {
+            int sum = 0;
+            for (int c = 0; c < channels; c++)
+            {
+                sum += samples[i + c];
+            }
+            push((double)sum / channels, listener);
+        }
+    }
+
+    /**
+     * 写入 16bit 小端 PCM
+     *
+     * @param pcm PCM 数据
+     * @param offset 起始字节
+     * @param length 字节数
+     */
+    public void write(byte[] pcm, int offset, int length, OnFrameListener listener)
+    {
+        int frameBytes = channels * 2;
+        int end = offset + length - length % frameBytes;
+        for (int i = offset; i < end; i += frameBytes)
+        {
+            int sum = 0;
+            for (int c = 0, p = i; c < channels; c++, p += 2)
+            {
+                sum += (short)((pcm[p] & 0xff) | ((pcm[p + 1] & 0xff) << 8));
+            }
+            push((double)sum / channels, listener);
+        }
+    }
+
+    private void push(double sample, OnFrameListener listener)
+    {
+        ring[writePos] = sample;
+        writePos = (writePos + 1) & (fftSize - 1);
+        if (filled < fftSize)
+        {
+            filled++;
+        }
+        sinceLastFrame++;
+        if (filled == fftSize && sinceLastFrame >= hopSize)
+        {
+            sinceLastFrame = 0;
+            plan.loadRing(ring, writePos);
+            plan.forward();
+            frameCount++;
+            if (listener != null)
+            {
+                listener.onFrame(plan.computeMagnitude());
+            }
+        }
+    }
+
+    /**
+     * 清空缓冲区，如暂停后恢复时调用，避免新旧数据拼在一帧里
+     */
+    public void reset()
+    {
+        writePos = 0;
+        filled = 0;
+        sinceLastFrame = 0;
+    }
+
+    /**
+     * 归还计算计划，之后不可再使用
+     */
+    public void release()
+    {
+        plan.recycle();
+    }
+
+    public int getFftSize()
+    {
+        return fftSize;
+    }
+
+    public int getHopSize()
+    {
+        return hopSize;
+    }
+
+    /**
+     * 已输出的帧数
+     */
+    public long getFrameCount()
+    {
+        return frameCount;
+    }
+
+    public interface OnFrameListener
+    {
+        /**
+         * 输出一帧频谱，在写入数据的线程中回调
+         *
+         * @param magnitude 前 fftSize/2 个频点的幅值，数组会被下一帧复用，回调返回后不可再持有
+         */
+        void onFrame(double[] magnitude);
+    }
+}
@@ -1,58 +1,149 @@
+#include <stdint.h>
 #include "lame-3.100_libmp3lame/lame.h"
 #include "Mp3Encoder.h"
 
-static lame_global_flags *glf = NULL;
+#define TO_GLF(handle) ((lame_global_flags *) (intptr_t) (handle))
 
-JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_init(
+JNIEXPORT jlong JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeInit(
         JNIEnv *env, jclass cls, jint inSamplerate, jint outChannel,
-        jint outSamplerate, jint outBitrate, jint quality) {
-    if (glf != NULL) {
-        lame_close(glf);
-        glf = NULL;
+        jint outSamplerate, jint outBitrate, jint quality, jint mode,
+        jint vbrMode, jfloat vbrQuality, jboolean writeVbrTag, jboolean disableReservoir) {
+    lame_global_flags *glf = lame_init();
+    if (glf == NULL) {
+        return 0;
     }
-    glf = lame_init();
     lame_set_in_samplerate(glf, inSamplerate);
     lame_set_num_channels(glf, outChannel);
     lame_set_out_samplerate(glf, outSamplerate);
-    lame_set_brate(glf, outBitrate);
     lame_set_quality(glf, quality);
-    lame_init_params(glf);
+    lame_set_VBR(glf, (vbr_mode) vbrMode);
+    if (vbrMode == vbr_off) {
+        lame_set_brate(glf, outBitrate);
+    } else if (vbrMode == vbr_abr) {
+        lame_set_VBR_mean_bitrate_kbps(glf, outBitrate);
+    } else {
+        lame_set_VBR_quality(glf, vbrQuality);
+    }
+    /* 开头预留一个空帧，flush 后用 lame_get_lametag_frame 的结果覆盖 */
+    lame_set_bWriteVbrTag(glf, writeVbrTag ? 1 : 0);
+    /* 不使用比特池时每帧独立，可在任意帧边界拼接 */
+    lame_set_disable_reservoir(glf, disableReservoir ? 1 : 0);
+    if (mode >= 0) {
+        /* 输入双声道、输出 MONO 时由 LAME 混合为单声道 */
+        lame_set_mode(glf, (MPEG_mode) mode);
+    }
+    if (lame_init_params(glf) < 0) {
+        lame_close(glf);
+        return 0;
+    }
+    return (jlong) (intptr_t) glf;
 }
 
-JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_encode(
-        JNIEnv *env, jclass cls, jshortArray buffer_l, jshortArray buffer_r,
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncode(
+        JNIEnv *env, jclass cls, jlong handle, jshortArray buffer_l, jshortArray buffer_r,
         jint samples, jbyteArray mp3buf) {
+    const jboolean same = (*env)->IsSameObject(env, buffer_l, buffer_r);
     jshort* j_buffer_l = (*env)->GetShortArrayElements(env, buffer_l, NULL);
 
-    jshort* j_buffer_r = (*env)->GetShortArrayElements(env, buffer_r, NULL);
+    jshort* j_buffer_r = same ? j_buffer_l : (*env)->GetShortArrayElements(env, buffer_r, NULL);
+
+    const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
+    jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
+
+    int result = lame_encode_buffer(TO_GLF(handle), j_buffer_l, j_buffer_r,
+            samples, (unsigned char *) j_mp3buf, mp3buf_size);
+
+    /* 输入只读，不需要复制回 Java 数组 */
+    (*env)->ReleaseShortArrayElements(env, buffer_l, j_buffer_l, JNI_ABORT);
+    if (!same) {
+        (*env)->ReleaseShortArrayElements(env, buffer_r, j_buffer_r, JNI_ABORT);
+    }
+    (*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
+
+    return result;
+}
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeDirect(
+        JNIEnv *env, jclass cls, jlong handle, jobject buffer_l, jint offset_l,
+        jobject buffer_r, jint offset_r, jint samples,
+        jobject mp3buf, jint mp3buf_offset, jint mp3buf_size) {
+    char *j_buffer_l = (*env)->GetDirectBufferAddress(env, buffer_l);
+    char *j_buffer_r = (*env)->GetDirectBufferAddress(env, buffer_r);
+    char *j_mp3buf = (*env)->GetDirectBufferAddress(env, mp3buf);
+    if (j_buffer_l == NULL || j_buffer_r == NULL || j_mp3buf == NULL) {
+        return -1;
+    }
+    return lame_encode_buffer(TO_GLF(handle),
+            (const short *) (j_buffer_l + offset_l), (const short *) (j_buffer_r + offset_r),
+            samples, (unsigned char *) (j_mp3buf + mp3buf_offset), mp3buf_size);
+}
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeInterleaved(
+        JNIEnv *env, jclass cls, jlong handle, jshortArray pcm, jint samples, jbyteArray mp3buf) {
+    jshort* j_pcm = (*env)->GetShortArrayElements(env, pcm, NULL);
 
     const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
     jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
 
-    int result = lame_encode_buffer(glf, j_buffer_l, j_buffer_r,
-            samples, j_mp3buf, mp3buf_size);
+    int result = lame_encode_buffer_interleaved(TO_GLF(handle), j_pcm,
+            samples, (unsigned char *) j_mp3buf, mp3buf_size);
 
-    (*env)->ReleaseShortArrayElements(env, buffer_l, j_buffer_l, 0);
-    (*env)->ReleaseShortArrayElements(env, buffer_r, j_buffer_r, 0);
+    (*env)->ReleaseShortArrayElements(env, pcm, j_pcm, JNI_ABORT);
     (*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
 
     return result;
 }
 
-JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_flush(
-        JNIEnv *env, jclass cls, jbyteArray mp3buf) {
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeInterleavedDirect(
+        JNIEnv *env, jclass cls, jlong handle, jobject pcm, jint offset, jint samples,
+        jobject mp3buf, jint mp3buf_offset, jint mp3buf_size) {
+    char *j_pcm = (*env)->GetDirectBufferAddress(env, pcm);
+    char *j_mp3buf = (*env)->GetDirectBufferAddress(env, mp3buf);
+    if (j_pcm == NULL || j_mp3buf == NULL) {
+        return -1;
+    }
+    /* lame_encode_buffer_interleaved 的参数未声明为 const，但不会修改输入 */
+    return lame_encode_buffer_interleaved(TO_GLF(handle), (short *) (j_pcm + offset),
+            samples, (unsigned char *) (j_mp3buf + mp3buf_offset), mp3buf_size);
+}
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeFlush(
+        JNIEnv *env, jclass cls, jlong handle, jbyteArray mp3buf) {
     const jsize mp3buf_size = (*env)->GetArrayLength(env, mp3buf);
     jbyte* j_mp3buf = (*env)->GetByteArrayElements(env, mp3buf, NULL);
 
-    int result = lame_encode_flush(glf, j_mp3buf, mp3buf_size);
+    int result = lame_encode_flush(TO_GLF(handle), (unsigned char *) j_mp3buf, mp3buf_size);
 
     (*env)->ReleaseByteArrayElements(env, mp3buf, j_mp3buf, 0);
 
     return result;
 }
 
-JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_close(
-        JNIEnv *env, jclass cls) {
-    lame_close(glf);
-    glf = NULL;
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeFlushDirect(
+        JNIEnv *env, jclass cls, jlong handle, jobject mp3buf, jint mp3buf_offset, jint mp3buf_size) {
+    char *j_mp3buf = (*env)->GetDirectBufferAddress(env, mp3buf);
+    if (j_mp3buf == NULL) {
+        return -1;
+    }
+    return lame_encode_flush(TO_GLF(handle), (unsigned char *) (j_mp3buf + mp3buf_offset), mp3buf_size);
+}
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeGetLameTagFrame(
+        JNIEnv *env, jclass cls, jlong handle, jbyteArray buffer) {
+    const jsize size = (*env)->GetArrayLength(env, buffer);
+    jbyte* j_buffer = (*env)->GetByteArrayElements(env, buffer, NULL);
+
+    size_t result = lame_get_lametag_frame(TO_GLF(handle), (unsigned char *) j_buffer, (size_t) size);
+
+    (*env)->ReleaseByteArrayElements(env, buffer, j_buffer, 0);
+
+    return (jint) result;
+}
+
+JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeClose(
+        JNIEnv *env, jclass cls, jlong handle) {
+    lame_global_flags *glf = TO_GLF(handle);
+    if (glf != NULL) {
+        lame_close(glf);
+    }
 }
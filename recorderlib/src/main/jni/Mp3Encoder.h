@@ -7,19 +7,34 @@
 extern "C" {
 #endif
 /*
- * Method:    init
+ * Method:    nativeInit
  */
-JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_init
-  (JNIEnv *, jclass, jint, jint, jint, jint, jint);
+JNIEXPORT jlong JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeInit
+  (JNIEnv *, jclass, jint, jint, jint, jint, jint, jint, jint, jfloat, jboolean, jboolean);
 
-JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_encode
-  (JNIEnv *, jclass, jshortArray, jshortArray, jint, jbyteArray);
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncode
+  (JNIEnv *, jclass, jlong, jshortArray, jshortArray, jint, jbyteArray);
 
-JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_flush
-  (JNIEnv *, jclass, jbyteArray);
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeInterleaved
+  (JNIEnv *, jclass, jlong, jshortArray, jint, jbyteArray);
 
-JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_close
-  (JNIEnv *, jclass);
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeInterleavedDirect
+  (JNIEnv *, jclass, jlong, jobject, jint, jint, jobject, jint, jint);
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeFlush
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeEncodeDirect
+  (JNIEnv *, jclass, jlong, jobject, jint, jobject, jint, jint, jobject, jint, jint);
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeFlushDirect
+  (JNIEnv *, jclass, jlong, jobject, jint, jint);
+
+JNIEXPORT jint JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeGetLameTagFrame
+  (JNIEnv *, jclass, jlong, jbyteArray);
+
+JNIEXPORT void JNICALL Java_com_xiaoxuan_audio_recorderlib_recorder_mp3_Mp3Encoder_nativeClose
+  (JNIEnv *, jclass, jlong);
 
 #ifdef __cplusplus
 }
@@ -0,0 +1,120 @@
+package com.xiaoxuan.audio;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AutoGainLimiterTest
+{
+    private static final int SAMPLE_RATE = 16000;
+
+    /**
+     * 5ms 前视对应的帧数，也是输出的延迟
+     */
+    private static final int LOOK_AHEAD = SAMPLE_RATE * AutoGainLimiter.DEFAULT_LOOK_AHEAD_MS / 1000;
+
+    /**
+     * 目标 0dBFS、最大增益 1：自动增益保持 1，只测试限幅器
+     */
+    private static AutoGainLimiter limiter(int channels, float ceilingDb)
+    {
+        return new AutoGainLimiter(SAMPLE_RATE, channels, 0, 1, ceilingDb);
+    }
+
+    private static int ceiling(float ceilingDb)
+    {
+        return Math.round((float)Math.pow(10, ceilingDb / 20) * 32767);
+    }
+
+    /**
+     * 峰值逐帧下降时所需增益逐帧上升，单调队列只从队首出队，曾经越界覆盖导致限幅失效
+     */
+    @Test
+    public void slowlyDecayingInputStaysUnderCeiling()
+    {
+        float ceilingDb = -3;
+        AutoGainLimiter limiter = limiter(1, ceilingDb);
+        short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++)
+        {
+            // 每帧都比上一帧小
+            int amplitude = 32767 - i;
+            samples[i] = (short)(i % 2 == 0 ? amplitude : -amplitude);
+        }
+        // 按录音时的块大小分批处理
+        for (int offset = 0; offset < samples.length; offset += 1024)
+        {
+            limiter.process(samples, offset, Math.min(1024, samples.length - offset));
+        }
+        int limit = ceiling(ceilingDb);
+        for (int i = 0; i < samples.length; i++)
+        {
+            assertTrue("sample " + i + " = " + samples[i], Math.abs(samples[i]) <= limit);
+        }
+    }
+
+    /**
+     * 峰值之前的 lookAhead 内增益逐帧线性下降，不跳变，峰值处降到所需值
+     */
+    @Test
+    public void gainRampsDownBeforePeak()
+    {
+        float ceilingDb = -6;
+        int level = 8000;
+        int peak = 30000;
+        int peakStart = SAMPLE_RATE / 2;
+        AutoGainLimiter limiter = limiter(1, ceilingDb);
+        short[] samples = new short[SAMPLE_RATE];
+        for (int i = 0; i < samples.length; i++)
+        {
+            samples[i] = (short)(i >= peakStart && i < peakStart + 100 ? peak : level);
+        }
+        limiter.process(samples, 0, samples.length);
+
+        int limit = ceiling(ceilingDb);
+        float required = (float)limit / peak;
+        float maxStep = (1 - required) / (LOOK_AHEAD + 1) + 1e-3f;
+        float previous = 1;
+        // 输出延迟 LOOK_AHEAD 帧，输入第 i 帧在输出的 i + LOOK_AHEAD 处
+        for (int i = LOOK_AHEAD; i < peakStart; i++)
+        {
+            float gain = samples[i + LOOK_AHEAD] / (float)level;
+            assertTrue("step at " + i + ": " + previous + " -> " + gain, previous - gain <= maxStep);
+            previous = gain;
+        }
+        for (int i = 0; i < samples.length; i++)
+        {
+            assertTrue("sample " + i + " = " + samples[i], Math.abs(samples[i]) <= limit);
+        }
+        assertEquals(limit, samples[peakStart + LOOK_AHEAD], 2);
+    }
+
+    /**
+     * 双声道 16bit 小端字节数组：取两个声道的较大值计算增益，两个声道都不超过上限
+     */
+    @Test
+    public void stereoBytesStayUnderCeiling()
+    {
+        float ceilingDb = -1;
+        AutoGainLimiter limiter = limiter(2, ceilingDb);
+        byte[] pcm = new byte[SAMPLE_RATE * 4];
+        for (int frame = 0; frame < SAMPLE_RATE; frame++)
+        {
+            short left = (short)(Math.sin(frame * 0.05) * 32767);
+            short right = (short)(Math.sin(frame * 0.013) * 20000);
+            int p = frame * 4;
+            pcm[p] = (byte)left;
+            pcm[p + 1] = (byte)(left >> 8);
+            pcm[p + 2] = (byte)right;
+            pcm[p + 3] = (byte)(right >> 8);
+        }
+        limiter.process(pcm, 0, pcm.length);
+        int limit = ceiling(ceilingDb);
+        for (int p = 0; p < pcm.length; p += 2)
+        {
+            short sample = (short)((pcm[p] & 0xff) | ((pcm[p + 1] & 0xff) << 8));
+            assertTrue("byte " + p + " = " + sample, Math.abs(sample) <= limit);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.xiaoxuan.audio;
+
+import com.xiaoxuan.audio.recorderlib.recorder.wav.WavUtils;
+import com.xiaoxuan.audio.recorderlib.utils.SegmentMerger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PCMGainerTest
+{
+    private File file;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        file = File.createTempFile("gainer", ".wav");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    /**
+     * 峰值为 -32768 时不能按略小于 1 的增益重写文件
+     */
+    @Test
+    public void normalizeLeavesFullScaleFileUntouched()
+        throws IOException
+    {
+        writeWav(16, new short[] {Short.MIN_VALUE, 1000, -1000, 12345});
+        byte[] before = Files.readAllBytes(file.toPath());
+        assertEquals(1f, PCMGainer.normalize(file, 4f), 0);
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void normalizeAmplifiesQuietFile()
+        throws IOException
+    {
+        writeWav(16, new short[] {100, -200, 50});
+        assertEquals(2f, PCMGainer.normalize(file, 2f), 0);
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(200, data.getShort(44));
+        assertEquals(-400, data.getShort(46));
+    }
+
+    @Test
+    public void rejectsWavThatIsNot16Bit()
+        throws IOException
+    {
+        writeWav(8, new short[] {10, 20, 30, 40});
+        byte[] before = Files.readAllBytes(file.toPath());
+        try
+        {
+            PCMGainer.normalize(file, 4f);
+            fail("8-bit wav must be rejected");
+        }
+        catch (IOException expected)
+        {
+            // 文件保持不变
+        }
+        assertArrayEquals(before, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void mergerAppliesGainAndReportsProgress()
+        throws IOException
+    {
+        List<File> segments = segments(new short[] {100, -100}, new short[] {50});
+        PCMGainer gainer = new PCMGainer(2f);
+        gainer.track(new byte[] {100, 0}, 0, 2);
+        final long[] last = new long[2];
+        SegmentMerger merger = gainer.merger(segments, file).setOnProgressListener(
+            new SegmentMerger.OnProgressListener()
+            {
+                @Override
+                public void onProgress(long merged, long total)
+                {
+                    last[0] = merged;
+                    last[1] = total;
+                }
+            });
+        assertTrue(merger.merge());
+        assertEquals(6, last[0]);
+        assertEquals(6, last[1]);
+        assertTrue(segments.isEmpty());
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        assertEquals(200, data.getShort(0));
+        assertEquals(-200, data.getShort(2));
+        assertEquals(100, data.getShort(4));
+    }
+
+    /**
+     * 取消后输出文件被删除，分段保留，可以再次合并
+     */
+    @Test
+    public void canceledMergerKeepsSegments()
+        throws IOException
+    {
+        List<File> segments = segments(new short[] {100, -100}, new short[] {50});
+        List<File> copy = new ArrayList<>(segments);
+        PCMGainer gainer = new PCMGainer(2f);
+        gainer.track(new byte[] {100, 0}, 0, 2);
+        final SegmentMerger merger = gainer.merger(segments, file);
+        merger.setOnProgressListener(new SegmentMerger.OnProgressListener()
+        {
+            @Override
+            public void onProgress(long merged, long total)
+            {
+                merger.cancel();
+            }
+        });
+        assertFalse(merger.merge());
+        assertFalse(file.exists());
+        assertEquals(copy, segments);
+        for (File segment : copy)
+        {
+            assertTrue(segment.exists());
+        }
+        assertTrue(gainer.merger(segments, file).merge());
+        assertEquals(6, file.length());
+        for (File segment : copy)
+        {
+            assertFalse(segment.exists());
+        }
+    }
+
+    private List<File> segments(short[]... contents)
+        throws IOException
+    {
+        List<File> segments = new ArrayList<>();
+        for (short[] samples : contents)
+        {
+            File segment = File.createTempFile("segment", ".pcm");
+            segment.deleteOnExit();
+            ByteBuffer data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            for (short sample : samples)
+            {
+                data.putShort(sample);
+            }
+            Files.write(segment.toPath(), data.array());
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private void writeWav(int sampleBits, short[] samples)
+        throws IOException
+    {
+        ByteBuffer data = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+        for (short sample : samples)
+        {
+            data.putShort(sample);
+        }
+        try (FileOutputStream out = new FileOutputStream(file))
+        {
+            out.write(WavUtils.generateWavFileHeader(44 + data.capacity(), 16000, 1, sampleBits));
+            out.write(data.array());
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.xiaoxuan.audio.recorderlib.recorder;
+
+import com.xiaoxuan.audio.recorderlib.utils.FileMerger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PcmSegmentsTest
+{
+    /**
+     * 同一秒内生成的分段名称前缀相同
+     */
+    private static final String PREFIX = "record_tmp_20260101_00_00_00";
+
+    private File dir;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        dir = Files.createTempDirectory("segments").toFile();
+    }
+
+    @After
+    public void tearDown()
+    {
+        File[] files = dir.listFiles();
+        if (files != null)
+        {
+            for (File file : files)
+            {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    /**
+     * 开始 -> 暂停 -> 恢复 -> 停止：两段都参与合并，且不留在缓存目录中
+     */
+    @Test
+    public void pauseResumeStopMergesEverySegment()
+        throws IOException, InterruptedException
+    {
+        PcmSegments segments = new PcmSegments();
+        File first = write(segments, segments.newFile(dir, PREFIX), "first;");
+        // 暂停后恢复，采集线程打开新的分段
+        File second = write(segments, segments.newFile(dir, PREFIX), "second;");
+
+        File result = new File(dir, "result.pcm");
+        assertTrue(new FileMerger(result, segments.awaitFiles()).merge());
+        assertEquals("first;second;", read(result));
+        assertTrue(segments.getFiles().isEmpty());
+        assertFalse(first.exists());
+        assertFalse(second.exists());
+    }
+
+    /**
+     * 同一秒内暂停恢复：时间戳相同的分段不能重名，否则打开新分段时会截断上一段
+     */
+    @Test
+    public void sameSecondSegmentsDoNotOverwriteEachOther()
+        throws IOException, InterruptedException
+    {
+        PcmSegments segments = new PcmSegments();
+        File first = segments.newFile(dir, PREFIX);
+        write(segments, first, "first;");
+        File second = segments.newFile(dir, PREFIX);
+        assertNotEquals(first, second);
+        write(segments, second, "second;");
+
+        File result = new File(dir, "result.pcm");
+        assertTrue(new FileMerger(result, segments.awaitFiles()).merge());
+        assertEquals("first;second;", read(result));
+    }
+
+    /**
+     * 重复登记同一个分段时报错，且不截断已录制的数据
+     */
+    @Test
+    public void duplicateSegmentFailsWithoutTruncating()
+        throws IOException
+    {
+        PcmSegments segments = new PcmSegments();
+        File first = write(segments, segments.newFile(dir, PREFIX), "first;");
+        try
+        {
+            segments.open(first).close();
+            fail("duplicate segment must be rejected");
+        }
+        catch (IllegalStateException expected)
+        {
+            // 已录制的分段保持不变
+        }
+        assertEquals("first;", read(first));
+        assertEquals(1, segments.getFiles().size());
+    }
+
+    /**
+     * 暂停后立即停止：采集线程还在写最后一段时，合并要等它写完
+     */
+    @Test
+    public void mergeWaitsForSegmentStillBeingWritten()
+        throws Exception
+    {
+        final PcmSegments segments = new PcmSegments();
+        write(segments, segments.newFile(dir, PREFIX), "first;");
+        final File last = segments.newFile(dir, PREFIX);
+        final CountDownLatch opened = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        Thread capture = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try (FileOutputStream out = segments.open(last))
+                {
+                    out.write("sec".getBytes(StandardCharsets.US_ASCII));
+                    opened.countDown();
+                    // 最后一次读取还没有写入
+                    finish.await();
+                    out.write("ond;".getBytes(StandardCharsets.US_ASCII));
+                }
+                catch (IOException | InterruptedException e)
+                {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        capture.start();
+        opened.await();
+
+        final List<List<File>> merged = new CopyOnWriteArrayList<>();
+        Thread stop = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    merged.add(segments.awaitFiles());
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        stop.start();
+        stop.join(200);
+        assertTrue(stop.isAlive());
+        assertTrue(merged.isEmpty());
+
+        finish.countDown();
+        stop.join();
+        capture.join();
+        File result = new File(dir, "result.pcm");
+        assertTrue(new FileMerger(result, merged.get(0)).merge());
+        assertEquals("first;second;", read(result));
+    }
+
+    @Test
+    public void resetDropsSegmentsOfPreviousSession()
+        throws IOException
+    {
+        PcmSegments segments = new PcmSegments();
+        File stale = write(segments, segments.newFile(dir, PREFIX), "stale;");
+        segments.reset();
+        File current = segments.newFile(dir, PREFIX);
+        assertNotEquals(stale, current);
+        write(segments, current, "current;");
+
+        assertEquals(1, segments.getFiles().size());
+        assertEquals(current, segments.getFiles().get(0));
+        assertTrue(stale.exists());
+    }
+
+    private static File write(PcmSegments segments, File segment, String content)
+        throws IOException
+    {
+        try (FileOutputStream out = segments.open(segment))
+        {
+            out.write(content.getBytes(StandardCharsets.US_ASCII));
+        }
+        return segment;
+    }
+
+    private static String read(File file)
+        throws IOException
+    {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,231 @@
+package com.xiaoxuan.audio.recorderlib.recorder.mp3;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class Mp3FrameScannerTest
+{
+    /**
+     * MPEG1 Layer III，128 kbps，44100 Hz，立体声，无填充
+     */
+    private static final int HEADER = 0xFFFB9000;
+
+    private static final int FRAME_LENGTH = 417;
+
+    /**
+     * ID3v2 结束位置：没有标签，以及标签结束在 64 KB 读取窗口末尾附近，使第一帧与下一帧跨越窗口
+     */
+    private static final int[] TAG_ENDS = {0, 65300, 65400, 65530};
+
+    private File file;
+
+    @Before
+    public void setUp()
+        throws IOException
+    {
+        file = File.createTempFile("scanner", ".mp3");
+    }
+
+    @After
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Test
+    public void cbrFramesAfterId3v2()
+        throws IOException
+    {
+        for (int tagEnd : TAG_ENDS)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(id3v2(tagEnd));
+            for (int i = 0; i < 100; i++)
+            {
+                out.write(frame());
+            }
+            Files.write(file.toPath(), out.toByteArray());
+
+            for (boolean index : new boolean[] {false, true})
+            {
+                Mp3Info info = Mp3FrameScanner.scan(file, index);
+                assertNotNull(info);
+                assertEquals("tag end " + tagEnd, Mp3Info.TagType.NONE, info.getTagType());
+                assertEquals("tag end " + tagEnd, 100, info.getFrameCount());
+                assertEquals(tagEnd, info.getAudioOffset());
+                assertEquals(44100, info.getSampleRate());
+                assertEquals(2, info.getChannels());
+                // 合成的帧都不带填充位，平均码率略低于 128
+                assertEquals(127, info.getBitrate());
+                assertEquals(100 * 1152 * 1000L / 44100, info.getDurationMs());
+                assertEquals(tagEnd + 16 * FRAME_LENGTH, info.getByteOffset(16 * 1152));
+            }
+        }
+    }
+
+    /**
+     * Xing 头给出帧数时不逐帧扫描，LAME 标签中的延迟和填充从时长中扣除
+     */
+    @Test
+    public void xingHeaderWithLameTag()
+        throws IOException
+    {
+        for (int tagEnd : TAG_ENDS)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(id3v2(tagEnd));
+            byte[] xing = frame();
+            ByteBuffer tag = ByteBuffer.wrap(xing);
+            tag.position(4 + 32);
+            tag.put("Xing".getBytes(StandardCharsets.US_ASCII));
+            tag.putInt(0x0F);
+            tag.putInt(1000);
+            tag.putInt(1000 * FRAME_LENGTH);
+            for (int i = 0; i < 100; i++)
+            {
+                tag.put((byte)(i * 256 / 100));
+            }
+            tag.putInt(50);
+            int lame = tag.position();
+            tag.put("LAME".getBytes(StandardCharsets.US_ASCII));
+            // 延迟 576、填充 1000，各 12 位
+            tag.position(lame + 21);
+            tag.put((byte)(576 >> 4));
+            tag.put((byte)(((576 & 0xF) << 4) | (1000 >> 8)));
+            tag.put((byte)(1000 & 0xFF));
+            out.write(xing);
+            for (int i = 0; i < 10; i++)
+            {
+                out.write(frame());
+            }
+            Files.write(file.toPath(), out.toByteArray());
+
+            Mp3Info info = Mp3FrameScanner.scan(file, false);
+            assertNotNull(info);
+            assertEquals("tag end " + tagEnd, Mp3Info.TagType.XING, info.getTagType());
+            assertEquals(1000, info.getFrameCount());
+            assertEquals(576, info.getEncoderDelay());
+            assertEquals(1000, info.getEncoderPadding());
+            assertEquals(1000 * 1152 - 576 - 1000, info.getTotalSamples());
+            assertEquals(tagEnd + FRAME_LENGTH, info.getAudioOffset());
+        }
+    }
+
+    @Test
+    public void vbriHeaderWithSeekTable()
+        throws IOException
+    {
+        for (int tagEnd : TAG_ENDS)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(id3v2(tagEnd));
+            byte[] vbri = frame();
+            ByteBuffer tag = ByteBuffer.wrap(vbri);
+            tag.position(4 + 32);
+            tag.put("VBRI".getBytes(StandardCharsets.US_ASCII));
+            tag.putShort((short)1);
+            tag.putShort((short)0);
+            tag.putShort((short)75);
+            tag.putInt(100 * FRAME_LENGTH);
+            tag.putInt(100);
+            // 4 项，缩放 1，每项 2 字节，每项 25 帧
+            tag.putShort((short)4);
+            tag.putShort((short)1);
+            tag.putShort((short)2);
+            tag.putShort((short)25);
+            for (int i = 0; i < 4; i++)
+            {
+                tag.putShort((short)(25 * FRAME_LENGTH));
+            }
+            out.write(vbri);
+            for (int i = 0; i < 100; i++)
+            {
+                out.write(frame());
+            }
+            Files.write(file.toPath(), out.toByteArray());
+
+            Mp3Info info = Mp3FrameScanner.scan(file, false);
+            assertNotNull(info);
+            assertEquals("tag end " + tagEnd, Mp3Info.TagType.VBRI, info.getTagType());
+            assertEquals(100, info.getFrameCount());
+            long audio = tagEnd + FRAME_LENGTH;
+            assertEquals(audio, info.getAudioOffset());
+            assertEquals(audio + 2 * 25 * FRAME_LENGTH, info.getByteOffset(50 * 1152));
+        }
+    }
+
+    /**
+     * 头信息帧被截断时不能读到文件之外
+     */
+    @Test
+    public void truncatedHeaderFrame()
+        throws IOException
+    {
+        for (int tagEnd : TAG_ENDS)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write(id3v2(tagEnd));
+            byte[] xing = frame();
+            ByteBuffer tag = ByteBuffer.wrap(xing);
+            tag.position(4 + 32);
+            tag.put("Xing".getBytes(StandardCharsets.US_ASCII));
+            tag.putInt(0x0F);
+            out.write(xing, 0, tag.position() + 10);
+            Files.write(file.toPath(), out.toByteArray());
+
+            Mp3Info info = Mp3FrameScanner.scan(file, true);
+            assertNotNull(info);
+            assertEquals("tag end " + tagEnd, Mp3Info.TagType.XING, info.getTagType());
+            assertEquals(0, info.getFrameCount());
+        }
+    }
+
+    @Test
+    public void noFrames()
+        throws IOException
+    {
+        byte[] data = new byte[70000];
+        Arrays.fill(data, (byte)0x55);
+        Files.write(file.toPath(), data);
+        assertNull(Mp3FrameScanner.scan(file, false));
+    }
+
+    private static byte[] id3v2(int tagEnd)
+    {
+        byte[] tag = new byte[tagEnd];
+        if (tagEnd == 0)
+        {
+            return tag;
+        }
+        int size = tagEnd - 10;
+        tag[0] = 'I';
+        tag[1] = 'D';
+        tag[2] = '3';
+        tag[3] = 3;
+        tag[6] = (byte)((size >> 21) & 0x7F);
+        tag[7] = (byte)((size >> 14) & 0x7F);
+        tag[8] = (byte)((size >> 7) & 0x7F);
+        tag[9] = (byte)(size & 0x7F);
+        return tag;
+    }
+
+    private static byte[] frame()
+    {
+        byte[] frame = new byte[FRAME_LENGTH];
+        ByteBuffer.wrap(frame).putInt(HEADER);
+        return frame;
+    }
+}